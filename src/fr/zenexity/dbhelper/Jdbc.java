@@ -3,16 +3,34 @@ package fr.zenexity.dbhelper;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
+import java.util.LinkedList;
 import java.util.List;
 
 public class Jdbc {
 
+    /**
+     * Work done with a connection.
+     */
+    public interface Work<R> {
+        R run(Jdbc jdbc) throws JdbcException;
+    }
+
     public final Connection connection;
     public final JdbcAdapter adapter;
 
     private int defaultResultSetType = JdbcStatement.defaultResultSetType;
     private int defaultResultSetConcurrency = JdbcStatement.defaultResultSetConcurrency;
+    private int defaultFetchSize = 0;
+    private int streamFetchSize = JdbcStatement.defaultStreamFetchSize;
+    private Integer streamFetchSizeHint;
+    private JdbcStatementCache statementCache;
+    private Sql.Dialect dialect;
+    private final LinkedList<Savepoint> savepoints = new LinkedList<Savepoint>();
+    private int transactionDepth = 0;
+    private boolean restoreAutoCommit;
+    private Boolean supportsSavepoints;
 
     public Jdbc(Connection connection, JdbcAdapter adapter) {
         this.connection = connection;
@@ -41,8 +59,203 @@ public class Jdbc {
         return this;
     }
 
+    public int defaultFetchSize() {
+        return defaultFetchSize;
+    }
+
+    /**
+     * Fetch size of the queries, 0 for the driver default.
+     */
+    public Jdbc defaultFetchSize(int rows) {
+        if (rows < 0) throw new IllegalArgumentException("rows: "+ rows);
+        defaultFetchSize = rows;
+        return this;
+    }
+
+    public int streamFetchSize() {
+        return streamFetchSize;
+    }
+
+    /**
+     * Fetch size of the streamed queries, replaced by the driver streaming
+     * hint when needed.
+     */
+    public Jdbc streamFetchSize(int rows) {
+        if (rows < 0) throw new IllegalArgumentException("rows: "+ rows);
+        streamFetchSize = rows;
+        streamFetchSizeHint = null;
+        return this;
+    }
+
+    /**
+     * SQL dialect used by page(), detected from the database product name
+     * unless set.
+     */
+    public Sql.Dialect dialect() throws JdbcException {
+        if (dialect == null) {
+            try {
+                dialect = Sql.Dialect.of(connection.getMetaData().getDatabaseProductName());
+            } catch (SQLException e) {
+                throw new JdbcException(e);
+            }
+        }
+        return dialect;
+    }
+
+    public Jdbc dialect(Sql.Dialect dialect) {
+        this.dialect = dialect;
+        return this;
+    }
+
+    public JdbcStatementCache statementCache() {
+        return statementCache;
+    }
+
+    /**
+     * Reuse prepared statements through a LRU cache of the given capacity.
+     * Use zero to disable the cache.
+     */
+    public Jdbc statementCache(int capacity) throws JdbcStatementException {
+        if (statementCache != null) statementCache.close();
+        statementCache = capacity > 0 ? new JdbcStatementCache(connection, capacity) : null;
+        return this;
+    }
+
+    /**
+     * Use a statement cache owned by someone else, the pool of the connection.
+     */
+    void statementCache(JdbcStatementCache cache) {
+        statementCache = cache;
+    }
+
+    public boolean inTransaction() {
+        return transactionDepth > 0;
+    }
+
+    /**
+     * Start a transaction, or a savepoint inside the current transaction.
+     * The auto-commit mode is restored by the outermost commit or rollback.
+     * Savepoints are named, as some drivers only support named ones.
+     */
+    public Jdbc begin() throws JdbcException {
+        try {
+            if (transactionDepth == 0) {
+                restoreAutoCommit = connection.getAutoCommit();
+                if (restoreAutoCommit) connection.setAutoCommit(false);
+            } else {
+                if (supportsSavepoints == null) supportsSavepoints = connection.getMetaData().supportsSavepoints();
+                if (!supportsSavepoints) throw new JdbcException("Nested transactions need savepoints, not supported by the driver");
+                savepoints.addLast(connection.setSavepoint("dbhelper"+ transactionDepth));
+            }
+        } catch (SQLException e) {
+            throw new JdbcException(e);
+        }
+        transactionDepth++;
+        return this;
+    }
+
+    /**
+     * Commit the transaction, or release the savepoint of a nested one.
+     */
+    public Jdbc commit() throws JdbcException {
+        if (transactionDepth == 0) throw new JdbcException("No transaction to commit");
+        if (transactionDepth > 1) {
+            Savepoint savepoint = savepoints.removeLast();
+            transactionDepth--;
+            try {
+                connection.releaseSavepoint(savepoint);
+            } catch (SQLException e) {
+                throw new JdbcException(e);
+            }
+            return this;
+        }
+        try {
+            connection.commit();
+        } catch (SQLException e) {
+            JdbcException error = new JdbcException(e);
+            rollback(error);
+            throw error;
+        }
+        endTransaction();
+        return this;
+    }
+
+    /**
+     * Roll back the transaction, or the work done since the savepoint of a
+     * nested one, then release the savepoint.
+     */
+    public Jdbc rollback() throws JdbcException {
+        if (transactionDepth == 0) throw new JdbcException("No transaction to roll back");
+        if (transactionDepth > 1) {
+            Savepoint savepoint = savepoints.removeLast();
+            transactionDepth--;
+            try {
+                connection.rollback(savepoint);
+            } catch (SQLException e) {
+                throw new JdbcException(e);
+            }
+            try {
+                connection.releaseSavepoint(savepoint);
+            } catch (SQLException e) {
+                // already released by the rollback on some drivers
+            }
+            return this;
+        }
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            throw new JdbcException(e);
+        } finally {
+            endTransaction();
+        }
+        return this;
+    }
+
+    /**
+     * Roll back after an error, keeping the error if the rollback fails.
+     */
+    private void rollback(Throwable error) {
+        try {
+            rollback();
+        } catch (JdbcException e) {
+            error.addSuppressed(e);
+        }
+    }
+
+    private void endTransaction() throws JdbcException {
+        transactionDepth = 0;
+        savepoints.clear();
+        try {
+            if (restoreAutoCommit) connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            throw new JdbcException(e);
+        }
+    }
+
+    /**
+     * Run the work in a transaction, nested in a savepoint if a transaction
+     * is already started, committed if the work completes and rolled back
+     * if it throws.
+     */
+    public <R> R inTransaction(Work<R> work) throws JdbcException {
+        begin();
+        R result;
+        try {
+            result = work.run(this);
+        } catch (RuntimeException e) {
+            rollback(e);
+            throw e;
+        } catch (Error e) {
+            rollback(e);
+            throw e;
+        }
+        commit();
+        return result;
+    }
+
     public void close() throws JdbcException {
         try {
+            if (statementCache != null) statementCache.close();
             connection.close();
         } catch (SQLException e) {
             throw new JdbcException(e);
@@ -51,19 +264,46 @@ public class Jdbc {
 
 
     public JdbcStatement newStatement(Sql.Query query) throws JdbcStatementException {
-        return JdbcStatement.prepare(connection, adapter, query, defaultResultSetType, defaultResultSetConcurrency);
+        return newStatement(query, defaultResultSetType, defaultResultSetConcurrency);
     }
 
     public JdbcStatement newStatement(Sql.Query query, int resultSetType, int resultSetConcurrency) throws JdbcStatementException {
-        return JdbcStatement.prepare(connection, adapter, query, resultSetType, resultSetConcurrency);
+        return newStatement(query, resultSetType, resultSetConcurrency, defaultFetchSize);
+    }
+
+    public JdbcStatement newStatement(Sql.Query query, int resultSetType, int resultSetConcurrency, int fetchSize) throws JdbcStatementException {
+        JdbcStatement qs;
+        if (statementCache == null) {
+            qs = JdbcStatement.prepare(connection, adapter, query, resultSetType, resultSetConcurrency);
+            if (fetchSize == 0) return qs;
+        } else {
+            // cached statements keep the fetch size of their previous use
+            qs = new JdbcStatement(statementCache.prepareQuery(query.toString(), resultSetType, resultSetConcurrency), adapter).paramsList(query.params());
+        }
+        try {
+            return qs.fetchSize(fetchSize);
+        } catch (JdbcStatementException e) {
+            qs.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Forward only, read only statement fetching rows streamFetchSize at a time.
+     */
+    public JdbcStatement newStreamStatement(Sql.Query query) throws JdbcStatementException {
+        if (streamFetchSizeHint == null) streamFetchSizeHint = JdbcStatement.streamFetchSize(connection, streamFetchSize);
+        return newStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, streamFetchSizeHint);
     }
 
     public JdbcStatement newStatement(Sql.UpdateQuery query) throws JdbcStatementException {
-        return JdbcStatement.prepare(connection, adapter, query);
+        if (statementCache == null) return JdbcStatement.prepare(connection, adapter, query);
+        return new JdbcStatement(statementCache.prepareUpdate(query.toString()), adapter).paramsList(query.params());
     }
 
     public JdbcStatement newStatement(Sql.UpdateQuery query, boolean returnGeneratedKeys) throws JdbcStatementException {
-        return JdbcStatement.prepare(connection, adapter, query, returnGeneratedKeys);
+        if (statementCache == null) return JdbcStatement.prepare(connection, adapter, query, returnGeneratedKeys);
+        return new JdbcStatement(statementCache.prepareUpdate(query.toString(), returnGeneratedKeys), adapter).paramsList(query.params());
     }
 
 
@@ -108,6 +348,107 @@ public class Jdbc {
     }
 
 
+    /**
+     * Execute a window of the query paged by the database with the SQL
+     * dialect, instead of scrolling the result up to the offset.
+     */
+    public <T> JdbcIterator<T> page(Sql.Query query, int offset, int size, JdbcResult.Factory<T> resultFactory) throws JdbcException {
+        if (offset < 0) {
+            size += offset;
+            offset = 0;
+        }
+        if (size <= 0) return iterator(null, resultFactory);
+        return execute(dialect().page(query, offset, size), resultFactory);
+    }
+
+    public <T> JdbcIterator<T> page(Sql.Query query, int offset, int size, Class<T> resultClass) throws JdbcException {
+        return page(query, offset, size, JdbcResult.buildFactory(resultClass));
+    }
+
+    public <T> JdbcIterator<T> page(Sql.Query query, int offset, int size, Class<T> resultClass, String... fields) throws JdbcException {
+        return page(query, offset, size, JdbcResult.buildFactory(resultClass, fields));
+    }
+
+    public <T> JdbcIterator<T> page(Sql.Query query, int offset, int size, Class<T> resultClass, List<String> fields) throws JdbcException {
+        return page(query, offset, size, JdbcResult.buildFactory(resultClass, fields));
+    }
+
+
+    /**
+     * Iterate over all the pages of the keyset following the start token,
+     * from the first row if null.
+     */
+    public <T> JdbcIterator.Keyset<T> keyset(Sql.Keyset keyset, Sql.Keyset.Token start, JdbcResult.Factory<T> resultFactory) throws JdbcException {
+        return new JdbcIterator.Keyset<T>(this, keyset, start, resultFactory);
+    }
+
+    public <T> JdbcIterator.Keyset<T> keyset(Sql.Keyset keyset, Sql.Keyset.Token start, Class<T> resultClass) throws JdbcException {
+        return keyset(keyset, start, JdbcResult.buildFactory(resultClass));
+    }
+
+    public <T> JdbcIterator.Keyset<T> keyset(Sql.Keyset keyset, Sql.Keyset.Token start, Class<T> resultClass, String... fields) throws JdbcException {
+        return keyset(keyset, start, JdbcResult.buildFactory(resultClass, fields));
+    }
+
+    public <T> JdbcIterator.Keyset<T> keyset(Sql.Keyset keyset, Sql.Keyset.Token start, Class<T> resultClass, List<String> fields) throws JdbcException {
+        return keyset(keyset, start, JdbcResult.buildFactory(resultClass, fields));
+    }
+
+
+    /**
+     * Execute the query with a forward only result fetched by chunks of
+     * streamFetchSize rows, so the rows are not all buffered by the driver.
+     * The iterator can't seek backward.
+     * PostgreSQL only fetches by chunks inside a transaction: in auto-commit
+     * mode it reads the whole result at once, call begin() first to stream.
+     */
+    public <T> JdbcIterator<T> stream(Sql.Query query, JdbcResult.Factory<T> resultFactory) throws JdbcException {
+        JdbcStatement qs = newStreamStatement(query);
+        return iterator(qs.statement, qs.executeQuery(), resultFactory);
+    }
+
+    public <T> JdbcIterator<T> stream(Sql.Query query, Class<T> resultClass) throws JdbcException {
+        return stream(query, JdbcResult.buildFactory(resultClass));
+    }
+
+    public <T> JdbcIterator<T> stream(Sql.Query query, Class<T> resultClass, String... fields) throws JdbcException {
+        return stream(query, JdbcResult.buildFactory(resultClass, fields));
+    }
+
+    public <T> JdbcIterator<T> stream(Sql.Query query, Class<T> resultClass, List<String> fields) throws JdbcException {
+        return stream(query, JdbcResult.buildFactory(resultClass, fields));
+    }
+
+    /**
+     * Streamed window: the offset rows are skipped by reading them forward.
+     */
+    public <T> JdbcIterator<T> stream(Sql.Query query, int offset, int size, JdbcResult.Factory<T> resultFactory) throws JdbcException {
+        JdbcStatement qs = newStreamStatement(query);
+        return iterator(qs.statement, qs.executeQuery(), offset, size, resultFactory);
+    }
+
+    public <T> JdbcIterator<T> stream(Sql.Query query, int offset, int size, Class<T> resultClass) throws JdbcException {
+        return stream(query, offset, size, JdbcResult.buildFactory(resultClass));
+    }
+
+    public <T> JdbcIterator<T> stream(Sql.Query query, int offset, int size, Class<T> resultClass, String... fields) throws JdbcException {
+        return stream(query, offset, size, JdbcResult.buildFactory(resultClass, fields));
+    }
+
+    public <T> JdbcIterator<T> stream(Sql.Query query, int offset, int size, Class<T> resultClass, List<String> fields) throws JdbcException {
+        return stream(query, offset, size, JdbcResult.buildFactory(resultClass, fields));
+    }
+
+
+    public JdbcColumns executeColumns(Sql.Query query) throws JdbcException {
+        return execute(query, JdbcColumns.rowFactory()).columns();
+    }
+
+    public JdbcColumns executeColumns(Sql.Query query, int offset, int size) throws JdbcException {
+        return execute(query, offset, size, JdbcColumns.rowFactory()).columns();
+    }
+
+
     public <T> JdbcIterator<T> iterator(ResultSet result, JdbcResult.Factory<T> resultFactory) throws JdbcIteratorException {
         return iterator(null, result, resultFactory);
     }
@@ -175,7 +516,8 @@ public class Jdbc {
 
 
     public int executeUpdate(String query, Object... params) throws JdbcStatementException {
-        return JdbcStatement.executeUpdate(connection, adapter, query, params);
+        if (statementCache == null) return JdbcStatement.executeUpdate(connection, adapter, query, params);
+        return execute(new Sql.FinalUpdateQuery(query, params));
     }
 
     public int execute(Sql.UpdateQuery query) throws JdbcStatementException {
@@ -189,8 +531,65 @@ public class Jdbc {
         return result;
     }
 
+    /**
+     * Run the commands of the script then close it, even if a command fails.
+     */
     public void execute(SqlScript script) throws JdbcStatementException {
-        for (Sql.FinalUpdateQuery query : script) execute(query);
+        boolean done = false;
+        try {
+            for (Sql.FinalUpdateQuery query : script) execute(query);
+            done = true;
+        } finally {
+            if (done) {
+                script.close();
+            } else try {
+                script.close();
+            } catch (SqlException e) {
+                // keep the command error
+            }
+        }
+    }
+
+
+    public JdbcBatch<Void> newBatch() {
+        return newBatch(JdbcBatch.defaultBatchSize);
+    }
+
+    public JdbcBatch<Void> newBatch(int batchSize) {
+        return new JdbcBatch<Void>(this, batchSize, null);
+    }
+
+    public <K> JdbcBatch<K> newBatch(int batchSize, JdbcResult.Factory<K> keysFactory) {
+        return new JdbcBatch<K>(this, batchSize, keysFactory);
+    }
+
+    public <K> JdbcBatch<K> newBatch(int batchSize, Class<K> keyClass) {
+        return newBatch(batchSize, JdbcResult.buildFactory(keyClass));
+    }
+
+    public int[] executeBatch(Iterable<? extends Sql.UpdateQuery> queries) throws JdbcException {
+        return executeBatch(queries, JdbcBatch.defaultBatchSize);
+    }
+
+    public int[] executeBatch(Iterable<? extends Sql.UpdateQuery> queries, int batchSize) throws JdbcException {
+        return executeBatch(queries, batchSize, 0);
+    }
+
+    /**
+     * Run queries, typically a SqlScript, with JDBC batches: consecutive
+     * queries with the same SQL text share one prepared statement and
+     * consecutive queries without parameters share one plain statement.
+     * If commitInterval is not zero the queries run in a transaction
+     * committed every commitInterval queries.
+     */
+    public int[] executeBatch(Iterable<? extends Sql.UpdateQuery> queries, int batchSize, int commitInterval) throws JdbcException {
+        JdbcBatch<Void> batch = newBatch(batchSize).commitEvery(commitInterval);
+        try {
+            batch.addAll(queries);
+            return batch.execute();
+        } finally {
+            batch.close();
+        }
     }
 
 }
@@ -7,12 +7,15 @@ import java.sql.Clob;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class JdbcAdapter {
 
@@ -31,6 +34,24 @@ public class JdbcAdapter {
     public interface SqlEncoder extends Normalizer {}
     public interface SqlDecoder extends Normalizer {}
 
+    /**
+     * A caster telling which classes it handles: cast must return null for
+     * the pairs it doesn't accept, they are skipped by the dispatch table.
+     * A null valueClass stands for null values.
+     */
+    public interface SelectiveCaster extends Caster {
+        boolean accepts(Class<?> valueClass, Class<?> clazz);
+    }
+
+    /**
+     * A normalizer telling which classes it handles: normalize must return
+     * null for the classes it doesn't accept, they are skipped by the
+     * dispatch table. A null valueClass stands for null values.
+     */
+    public interface SelectiveNormalizer extends Normalizer {
+        boolean accepts(Class<?> valueClass);
+    }
+
     public static <T extends Priority> Comparator<T> priorityComparator() {
         return new Comparator<T>() {
             public int compare(T o1, T o2) {
@@ -78,19 +99,30 @@ public class JdbcAdapter {
     }
 
 
-    private final List<Caster> casters;
-    private final List<SqlDecoder> sqlDecoders;
-    private final List<SqlEncoder> sqlEncoders;
+    private final Caster[] casters;
+    private final Normalizer[] sqlDecoders;
+    private final Normalizer[] sqlEncoders;
+    private final ConcurrentMap<CastKey, Caster[]> castDispatch;
+    private final ConcurrentMap<Class<?>, int[]> decodeDispatch;
+    private final ConcurrentMap<Class<?>, int[]> encodeDispatch;
 
+    /**
+     * Casters and normalizers are resolved once per value class (and target
+     * class) in dispatch tables: selective ones which don't accept the
+     * classes are skipped, the others are called in priority order.
+     */
     private JdbcAdapter(Collection<Caster> casters, Collection<SqlDecoder> decoders, Collection<SqlEncoder> encoders) {
-        this.casters = new ArrayList<Caster>(casters);
-        this.sqlDecoders = new ArrayList<SqlDecoder>(decoders);
-        this.sqlEncoders = new ArrayList<SqlEncoder>(encoders);
+        this.casters = casters.toArray(new Caster[casters.size()]);
+        this.sqlDecoders = decoders.toArray(new Normalizer[decoders.size()]);
+        this.sqlEncoders = encoders.toArray(new Normalizer[encoders.size()]);
+        this.castDispatch = new ConcurrentHashMap<CastKey, Caster[]>();
+        this.decodeDispatch = new ConcurrentHashMap<Class<?>, int[]>();
+        this.encodeDispatch = new ConcurrentHashMap<Class<?>, int[]>();
     }
 
     public <T> T cast(Class<T> clazz, Object value) throws JdbcAdapterException {
         try {
-            for (Caster caster : casters) {
+            for (Caster caster : casters(value == null ? null : value.getClass(), clazz)) {
                 T result = caster.cast(clazz, value);
                 if (result != null) return result;
             }
@@ -101,6 +133,32 @@ public class JdbcAdapter {
         }
     }
 
+    /**
+     * True if cast(clazz, value) returns the values of valueClass as they are:
+     * no caster but the StandardCaster of primitive types accepts them.
+     */
+    public boolean castsAsIs(Class<?> valueClass, Class<?> clazz) {
+        for (Caster caster : casters(valueClass, clazz)) {
+            if (caster.getClass() != StandardCaster.class || !clazz.isPrimitive()) return false;
+        }
+        return true;
+    }
+
+    private Caster[] casters(Class<?> valueClass, Class<?> clazz) {
+        CastKey key = new CastKey(valueClass, clazz);
+        Caster[] dispatch = castDispatch.get(key);
+        if (dispatch == null) {
+            List<Caster> accepted = new ArrayList<Caster>(casters.length);
+            for (Caster caster : casters) {
+                if (!(caster instanceof SelectiveCaster) || ((SelectiveCaster) caster).accepts(valueClass, clazz))
+                    accepted.add(caster);
+            }
+            dispatch = accepted.toArray(new Caster[accepted.size()]);
+            castDispatch.put(key, dispatch);
+        }
+        return dispatch;
+    }
+
     public static Object normalize(Collection<? extends Normalizer> normalizers, Object value) throws JdbcAdapterException {
         try {
             for (Normalizer normalizer : normalizers) {
@@ -114,17 +172,98 @@ public class JdbcAdapter {
         }
     }
 
+    /**
+     * Same as normalize(Collection, Object) using the dispatch table of the
+     * normalizers: when a normalizer changes the class of the value, the
+     * following normalizers are resolved again for the new class.
+     */
+    private static Object normalize(Normalizer[] normalizers, ConcurrentMap<Class<?>, int[]> dispatch, Object value) throws JdbcAdapterException {
+        try {
+            int start = 0;
+            dispatching: while (true) {
+                Class<?> valueClass = value == null ? null : value.getClass();
+                for (int index : normalizers(normalizers, dispatch, valueClass)) {
+                    if (index < start) continue;
+                    Object result = normalizers[index].normalize(value);
+                    if (result != null) {
+                        value = result;
+                        if (result.getClass() != valueClass) {
+                            start = index + 1;
+                            continue dispatching;
+                        }
+                    }
+                }
+                return value;
+            }
+        } catch (Exception e) {
+            String valueClass = value == null ? null : value.getClass().getName();
+            throw new JdbcAdapterException("normalize "+ value +" ("+ valueClass +")", e);
+        }
+    }
+
+    private static int[] normalizers(Normalizer[] normalizers, ConcurrentMap<Class<?>, int[]> dispatch, Class<?> valueClass) {
+        Class<?> key = valueClass == null ? Void.class : valueClass;
+        int[] indexes = dispatch.get(key);
+        if (indexes == null) {
+            int[] accepted = new int[normalizers.length];
+            int count = 0;
+            for (int i = 0; i < normalizers.length; i++) {
+                if (!(normalizers[i] instanceof SelectiveNormalizer) || ((SelectiveNormalizer) normalizers[i]).accepts(valueClass))
+                    accepted[count++] = i;
+            }
+            indexes = Arrays.copyOf(accepted, count);
+            dispatch.put(key, indexes);
+        }
+        return indexes;
+    }
+
+    /**
+     * True if decodeSqlValue returns the values of valueClass as they are.
+     */
+    public boolean decodesAsIs(Class<?> valueClass) {
+        return normalizers(sqlDecoders, decodeDispatch, valueClass).length == 0;
+    }
+
     public Object decodeSqlValue(Object value) throws JdbcAdapterException {
-        return normalize(sqlDecoders, value);
+        return normalize(sqlDecoders, decodeDispatch, value);
     }
 
     public Object encodeSqlValue(Object value) throws JdbcAdapterException {
-        return normalize(sqlEncoders, value);
+        return normalize(sqlEncoders, encodeDispatch, value);
+    }
+
+    private static final class CastKey {
+        private final Class<?> valueClass;
+        private final Class<?> clazz;
+
+        public CastKey(Class<?> valueClass, Class<?> clazz) {
+            this.valueClass = valueClass;
+            this.clazz = clazz;
+        }
+
+        @Override
+        public int hashCode() {
+            return (valueClass == null ? 0 : valueClass.hashCode()) * 31 + clazz.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CastKey)) return false;
+            CastKey key = (CastKey) obj;
+            return valueClass == key.valueClass && clazz == key.clazz;
+        }
     }
 
-    public static class StandardCaster implements Caster {
+    public static class StandardCaster implements SelectiveCaster {
         public int priority() { return 1000; }
 
+        public boolean accepts(Class<?> valueClass, Class<?> clazz) {
+            if (clazz.isPrimitive()) return true;
+            if (valueClass == null) return false;
+            if (clazz.isEnum()) return Number.class.isAssignableFrom(valueClass) || String.class.isAssignableFrom(valueClass);
+            return clazz == String.class && Clob.class.isAssignableFrom(valueClass);
+        }
+
         @SuppressWarnings({ "unchecked", "rawtypes" })
         public <T> T cast(Class<T> clazz, Object value) throws Exception {
             //TODO cast to primitive types
@@ -150,9 +289,13 @@ public class JdbcAdapter {
         }
     }
 
-    public static class StandardSqlValueDecoder implements SqlDecoder {
+    public static class StandardSqlValueDecoder implements SqlDecoder, SelectiveNormalizer {
         public int priority() { return 1000; }
 
+        public boolean accepts(Class<?> valueClass) {
+            return valueClass != null && (BigDecimal.class.isAssignableFrom(valueClass) || Clob.class.isAssignableFrom(valueClass));
+        }
+
         public Object normalize(Object value) throws Exception {
             if (value instanceof BigDecimal) return new Long(((BigDecimal)value).longValue());
             if (value instanceof Clob) return clobToString((Clob) value);
@@ -160,16 +303,20 @@ public class JdbcAdapter {
         }
     }
 
-    public static class Date2SqlTimestampEncoder implements SqlEncoder {
+    public static class Date2SqlTimestampEncoder implements SqlEncoder, SelectiveNormalizer {
         public int priority() { return 1000; }
 
+        public boolean accepts(Class<?> valueClass) {
+            return valueClass != null && Date.class.isAssignableFrom(valueClass);
+        }
+
         public Object normalize(Object value) throws Exception {
             if (value instanceof Date) return new Timestamp(((Date)value).getTime());
             return null;
         }
     }
 
-    public static class NumberConverter implements Caster {
+    public static class NumberConverter implements SelectiveCaster {
         public final Class<? extends Number> fromClazz;
 
         public NumberConverter(Class<? extends Number> _fromClazz) {
@@ -178,6 +325,12 @@ public class JdbcAdapter {
 
         public int priority() { return 900; }
 
+        public boolean accepts(Class<?> valueClass, Class<?> clazz) {
+            return valueClass != null && fromClazz.isAssignableFrom(valueClass)
+                && (clazz == Byte.class || clazz == Short.class || clazz == Integer.class
+                    || clazz == Long.class || clazz == Float.class || clazz == Double.class);
+        }
+
         @SuppressWarnings("unchecked")
         public <T> T cast(Class<T> clazz, Object value) throws Exception {
             if (Number.class.isAssignableFrom(clazz) && fromClazz.isInstance(value)) {
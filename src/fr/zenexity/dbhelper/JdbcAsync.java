@@ -0,0 +1,145 @@
+package fr.zenexity.dbhelper;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+/**
+ * Run queries in background tasks returning CompletableFutures, each task
+ * taking its own connection from a supplier, typically a JdbcPool, and
+ * closing it when done. Query results are read into lists by the task.
+ */
+public class JdbcAsync {
+
+    private final Supplier<Jdbc> connections;
+    private final Executor executor;
+    private final boolean ownExecutor;
+
+    public JdbcAsync(Supplier<Jdbc> connections, Executor executor) {
+        this(connections, executor, false);
+    }
+
+    /**
+     * Run the tasks on newExecutor(threads), shut down by close().
+     */
+    public JdbcAsync(Supplier<Jdbc> connections, int threads) {
+        this(connections, newExecutor(threads), true);
+    }
+
+    private JdbcAsync(Supplier<Jdbc> connections, Executor executor, boolean ownExecutor) {
+        this.connections = connections;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+    }
+
+    /**
+     * A fixed pool of threads, virtual ones when the runtime has them, so
+     * at most threads tasks run at once.
+     */
+    public static ExecutorService newExecutor(int threads) {
+        if (threads <= 0) throw new IllegalArgumentException("threads: "+ threads);
+        ThreadFactory factory = virtualThreadFactory();
+        if (factory == null) factory = new ThreadFactory() {
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "JdbcAsync");
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        return Executors.newFixedThreadPool(threads, factory);
+    }
+
+    /**
+     * Thread.ofVirtual().name("JdbcAsync").factory() if available, null otherwise.
+     */
+    static ThreadFactory virtualThreadFactory() {
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Object virtual = Thread.class.getMethod("ofVirtual").invoke(null);
+            virtual = builder.getMethod("name", String.class).invoke(virtual, "JdbcAsync");
+            return (ThreadFactory) builder.getMethod("factory").invoke(virtual);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public Executor executor() {
+        return executor;
+    }
+
+    /**
+     * Run the work with its own connection.
+     */
+    public <R> CompletableFuture<R> run(final Jdbc.Work<R> work) {
+        return CompletableFuture.supplyAsync(new Supplier<R>() {
+            public R get() {
+                Jdbc jdbc = connections.get();
+                try {
+                    return work.run(jdbc);
+                } finally {
+                    jdbc.close();
+                }
+            }
+        }, executor);
+    }
+
+    public <T> CompletableFuture<List<T>> execute(final Sql.Query query, final JdbcResult.Factory<T> resultFactory) {
+        return run(new Jdbc.Work<List<T>>() {
+            public List<T> run(Jdbc jdbc) {
+                return jdbc.execute(query, resultFactory).list();
+            }
+        });
+    }
+
+    public <T> CompletableFuture<List<T>> execute(final Sql.Query query, final Class<T> resultClass) {
+        return run(new Jdbc.Work<List<T>>() {
+            public List<T> run(Jdbc jdbc) {
+                return jdbc.execute(query, resultClass).list();
+            }
+        });
+    }
+
+    public <T> CompletableFuture<List<T>> execute(final Sql.Query query, final Class<T> resultClass, final String... fields) {
+        return run(new Jdbc.Work<List<T>>() {
+            public List<T> run(Jdbc jdbc) {
+                return jdbc.execute(query, resultClass, fields).list();
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> execute(final Sql.UpdateQuery query) {
+        return run(new Jdbc.Work<Integer>() {
+            public Integer run(Jdbc jdbc) {
+                return jdbc.execute(query);
+            }
+        });
+    }
+
+    /**
+     * Run the script in one transaction.
+     */
+    public CompletableFuture<Void> execute(final SqlScript script) {
+        return run(new Jdbc.Work<Void>() {
+            public Void run(Jdbc jdbc) {
+                return jdbc.inTransaction(new Jdbc.Work<Void>() {
+                    public Void run(Jdbc jdbc) {
+                        jdbc.execute(script);
+                        return null;
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Shut down the executor if created by this object.
+     */
+    public void close() {
+        if (ownExecutor) ((ExecutorService) executor).shutdown();
+    }
+
+}
@@ -0,0 +1,263 @@
+package fr.zenexity.dbhelper;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Send update queries to the database with JDBC batches.
+ * Consecutive queries sharing the same SQL text are bound to one prepared
+ * statement and sent with executeBatch() every batchSize rows, or when the
+ * SQL text changes, so the execution order of the queries is kept.
+ * Consecutive queries without parameters are sent together through a plain
+ * Statement batch whatever their SQL text, unless generated keys are fetched.
+ */
+public class JdbcBatch<K> {
+
+    public static final int defaultBatchSize = 1000;
+
+    public final Jdbc jdbc;
+    private final int batchSize;
+    private final JdbcResult.Factory<K> keysFactory;
+    private final List<K> keys;
+    private int[] counts;
+    private int countsSize;
+
+    private String sql;
+    private JdbcStatement statement;
+    private Statement plainStatement;
+    private int pending;
+
+    private int commitInterval;
+    private int uncommitted;
+    private Boolean autoCommit;
+
+    /**
+     * Use a null keysFactory to not fetch generated keys.
+     */
+    public JdbcBatch(Jdbc jdbc, int batchSize, JdbcResult.Factory<K> keysFactory) {
+        if (batchSize <= 0) throw new IllegalArgumentException("batchSize: "+ batchSize);
+        this.jdbc = jdbc;
+        this.batchSize = batchSize;
+        this.keysFactory = keysFactory;
+        this.keys = new ArrayList<K>();
+        this.counts = new int[16];
+        this.countsSize = 0;
+        this.commitInterval = 0;
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Run the batch in a transaction committed every given number of queries
+     * and when the batch is executed. Uncommitted queries are rolled back if
+     * the batch is closed before being executed.
+     * Use zero to keep the connection auto-commit mode. Ignored when the
+     * batch is run inside a transaction started with Jdbc.begin().
+     */
+    public JdbcBatch<K> commitEvery(int queries) {
+        if (queries < 0) throw new IllegalArgumentException("queries: "+ queries);
+        commitInterval = queries;
+        return this;
+    }
+
+    public JdbcBatch<K> add(Sql.UpdateQuery query) throws JdbcException {
+        begin();
+        String querySql = query.toString();
+        Iterable<Object> params = query.params();
+        if (keysFactory == null && !params.iterator().hasNext()) {
+            addPlain(querySql);
+        } else {
+            if (statement == null || !querySql.equals(sql)) {
+                flush();
+                release();
+                statement = keysFactory == null
+                    ? jdbc.newStatement(new Sql.FinalUpdateQuery(querySql))
+                    : jdbc.newStatement(new Sql.FinalUpdateQuery(querySql), true);
+                sql = querySql;
+            }
+            statement.addBatchList(params);
+        }
+        pending++;
+        uncommitted++;
+        if (autoCommit != null && uncommitted >= commitInterval) commit();
+        else if (pending >= batchSize) flush();
+        return this;
+    }
+
+    private void addPlain(String querySql) throws JdbcException {
+        if (statement != null) {
+            flush();
+            release();
+        }
+        try {
+            if (plainStatement == null) plainStatement = jdbc.connection.createStatement();
+            plainStatement.addBatch(querySql);
+        } catch (SQLException e) {
+            throw new JdbcStatementException(e);
+        }
+    }
+
+    public JdbcBatch<K> add(String query, Object... params) throws JdbcException {
+        return add(new Sql.FinalUpdateQuery(query, params));
+    }
+
+    public JdbcBatch<K> addAll(Iterable<? extends Sql.UpdateQuery> queries) throws JdbcException {
+        for (Sql.UpdateQuery query : queries) add(query);
+        return this;
+    }
+
+    /**
+     * Send the pending rows to the database.
+     */
+    public JdbcBatch<K> flush() throws JdbcException {
+        if (pending == 0) return this;
+        pending = 0;
+        if (statement != null) {
+            int[] batchCounts = statement.executeBatch();
+            appendCounts(batchCounts);
+            if (keysFactory != null) {
+                int returned = 0;
+                for (K key : statement.getGeneratedKeys(keysFactory)) {
+                    keys.add(key);
+                    returned++;
+                }
+                int rows = insertedRows(batchCounts);
+                if (returned < rows) throw new JdbcException(returned +" generated keys returned for "+ rows
+                        +" rows, the driver doesn't return the keys of every batched row: use a batch size of 1");
+            }
+        } else if (plainStatement != null) {
+            try {
+                appendCounts(plainStatement.executeBatch());
+            } catch (SQLException e) {
+                throw new JdbcStatementException(e);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Rows inserted by a batch, 0 if the driver didn't count them.
+     */
+    private static int insertedRows(int[] batchCounts) {
+        int rows = 0;
+        for (int count : batchCounts) {
+            if (count < 0) return 0;
+            rows += count;
+        }
+        return rows;
+    }
+
+    private void appendCounts(int[] batchCounts) {
+        if (countsSize + batchCounts.length > counts.length)
+            counts = Arrays.copyOf(counts, Math.max(counts.length * 2, countsSize + batchCounts.length));
+        System.arraycopy(batchCounts, 0, counts, countsSize, batchCounts.length);
+        countsSize += batchCounts.length;
+    }
+
+    private void begin() throws JdbcException {
+        if (commitInterval == 0 || autoCommit != null || jdbc.inTransaction()) return;
+        try {
+            autoCommit = jdbc.connection.getAutoCommit();
+            if (autoCommit) jdbc.connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            throw new JdbcException(e);
+        }
+    }
+
+    private void commit() throws JdbcException {
+        flush();
+        uncommitted = 0;
+        try {
+            jdbc.connection.commit();
+        } catch (SQLException e) {
+            throw new JdbcException(e);
+        }
+    }
+
+    private void end(boolean commit) throws JdbcException {
+        if (autoCommit == null) return;
+        try {
+            if (commit) jdbc.connection.commit();
+            else if (uncommitted != 0) jdbc.connection.rollback();
+        } catch (SQLException e) {
+            throw new JdbcException(e);
+        } finally {
+            uncommitted = 0;
+            try {
+                if (autoCommit) jdbc.connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                throw new JdbcException(e);
+            } finally {
+                autoCommit = null;
+            }
+        }
+    }
+
+    /**
+     * Update counts of the rows sent so far, in the order they were added.
+     */
+    public int[] updateCounts() {
+        return Arrays.copyOf(counts, countsSize);
+    }
+
+    /**
+     * Generated keys of the rows sent so far, in the order they were returned
+     * by the driver. Flushing fails when the driver returns fewer keys than
+     * rows inserted.
+     */
+    public List<K> generatedKeys() {
+        return keys;
+    }
+
+    /**
+     * Flush, commit and close the batch then return the update counts of all rows.
+     */
+    public int[] execute() throws JdbcException {
+        try {
+            flush();
+            end(true);
+        } finally {
+            close();
+        }
+        return updateCounts();
+    }
+
+    private void release() throws JdbcStatementException {
+        if (statement == null) return;
+        JdbcStatement closing = statement;
+        statement = null;
+        sql = null;
+        closing.close();
+    }
+
+    /**
+     * Release the statements, rows not flushed yet are dropped and
+     * uncommitted rows are rolled back.
+     */
+    public void close() throws JdbcException {
+        pending = 0;
+        try {
+            end(false);
+        } finally {
+            try {
+                release();
+            } finally {
+                if (plainStatement != null) {
+                    Statement closing = plainStatement;
+                    plainStatement = null;
+                    try {
+                        closing.close();
+                    } catch (SQLException e) {
+                        throw new JdbcStatementException(e);
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,325 @@
+package fr.zenexity.dbhelper;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * Column oriented table of result rows.
+ * Integer, bigint and floating point columns are stored in growable int[],
+ * long[] and double[] arrays with a null bitmap, other columns are stored as
+ * objects decoded by the adapter SQL decoders.
+ * Rows and columns are numbered from 0.
+ */
+public class JdbcColumns {
+
+    private final Column[] columns;
+    private int size;
+    private int capacity;
+
+    /**
+     * Empty table without columns.
+     */
+    public JdbcColumns() {
+        columns = new Column[0];
+        size = 0;
+        capacity = 0;
+    }
+
+    public JdbcColumns(ResultSetMetaData meta, JdbcAdapter adapter) throws SQLException {
+        columns = new Column[meta.getColumnCount()];
+        for (int i = 0; i < columns.length; i++) {
+            String label = meta.getColumnLabel(i + 1);
+            switch (meta.getColumnType(i + 1)) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                columns[i] = new IntColumn(label);
+                break;
+            case Types.BIGINT:
+                columns[i] = new LongColumn(label);
+                break;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                columns[i] = new DoubleColumn(label);
+                break;
+            default:
+                columns[i] = new ObjectColumn(label, adapter);
+            }
+        }
+        size = 0;
+        capacity = 0;
+    }
+
+    /**
+     * Add the current row of the result.
+     */
+    public void add(ResultSet result) throws SQLException, JdbcAdapterException {
+        if (size == capacity) {
+            capacity = Math.max(16, capacity * 2);
+            for (Column column : columns) column.grow(capacity);
+        }
+        for (int i = 0; i < columns.length; i++) columns[i].read(result, i + 1, size);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int columnCount() {
+        return columns.length;
+    }
+
+    public String label(int column) {
+        return columns[column].label;
+    }
+
+    /**
+     * Index of the column with the given label, ignoring case, or -1.
+     */
+    public int column(String label) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].label.equalsIgnoreCase(label)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * int.class, long.class, double.class or Object.class.
+     */
+    public Class<?> type(int column) {
+        return columns[column].type();
+    }
+
+    public boolean isNull(int row, int column) {
+        checkRow(row);
+        return columns[column].isNull(row);
+    }
+
+    /**
+     * The value of an int column, 0 if null.
+     */
+    public int getInt(int row, int column) {
+        checkRow(row);
+        return intColumn(column).values[row];
+    }
+
+    /**
+     * The value of an int or long column, 0 if null.
+     */
+    public long getLong(int row, int column) {
+        checkRow(row);
+        Column col = columns[column];
+        if (col instanceof IntColumn) return ((IntColumn) col).values[row];
+        return longColumn(column).values[row];
+    }
+
+    /**
+     * The value of a numeric column, 0 if null.
+     */
+    public double getDouble(int row, int column) {
+        checkRow(row);
+        Column col = columns[column];
+        if (col instanceof IntColumn) return ((IntColumn) col).values[row];
+        if (col instanceof LongColumn) return ((LongColumn) col).values[row];
+        return doubleColumn(column).values[row];
+    }
+
+    /**
+     * The value of any column, boxed for primitive columns, null if null.
+     */
+    public Object getObject(int row, int column) {
+        checkRow(row);
+        return columns[column].get(row);
+    }
+
+    /**
+     * Copy of the values of an int column, nulls are stored as 0.
+     */
+    public int[] ints(int column) {
+        return Arrays.copyOf(intColumn(column).values, size);
+    }
+
+    /**
+     * Copy of the values of a long column, nulls are stored as 0.
+     */
+    public long[] longs(int column) {
+        return Arrays.copyOf(longColumn(column).values, size);
+    }
+
+    /**
+     * Copy of the values of a double column, nulls are stored as 0.
+     */
+    public double[] doubles(int column) {
+        return Arrays.copyOf(doubleColumn(column).values, size);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) throw new IndexOutOfBoundsException("row "+ row +" of "+ size);
+    }
+
+    private IntColumn intColumn(int column) {
+        if (!(columns[column] instanceof IntColumn)) throw new IllegalArgumentException(columns[column].label +" is not an int column");
+        return (IntColumn) columns[column];
+    }
+
+    private LongColumn longColumn(int column) {
+        if (!(columns[column] instanceof LongColumn)) throw new IllegalArgumentException(columns[column].label +" is not a long column");
+        return (LongColumn) columns[column];
+    }
+
+    private DoubleColumn doubleColumn(int column) {
+        if (!(columns[column] instanceof DoubleColumn)) throw new IllegalArgumentException(columns[column].label +" is not a double column");
+        return (DoubleColumn) columns[column];
+    }
+
+    /**
+     * Factory for iterators only used to fill columns.
+     */
+    static JdbcResult.Factory<Void> rowFactory() {
+        return new JdbcResult.Factory<Void>() {
+            public void init(JdbcAdapter adapter, ResultSet result) {}
+            public Void create(ResultSet result) { return null; }
+        };
+    }
+
+    private static abstract class Column {
+        public final String label;
+        private long[] nulls;
+
+        public Column(String label) {
+            this.label = label;
+            this.nulls = new long[0];
+        }
+
+        public abstract Class<?> type();
+        public abstract void read(ResultSet result, int index, int row) throws SQLException, JdbcAdapterException;
+        public abstract Object get(int row);
+
+        public void grow(int capacity) {
+            nulls = Arrays.copyOf(nulls, (capacity + 63) >>> 6);
+        }
+
+        protected void setNull(int row) {
+            nulls[row >>> 6] |= 1L << row;
+        }
+
+        public boolean isNull(int row) {
+            return (nulls[row >>> 6] & (1L << row)) != 0;
+        }
+    }
+
+    private static class IntColumn extends Column {
+        public int[] values = new int[0];
+
+        public IntColumn(String label) { super(label); }
+
+        @Override
+        public Class<?> type() { return int.class; }
+
+        @Override
+        public void grow(int capacity) {
+            super.grow(capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        public void read(ResultSet result, int index, int row) throws SQLException {
+            values[row] = result.getInt(index);
+            if (values[row] == 0 && result.wasNull()) setNull(row);
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : Integer.valueOf(values[row]);
+        }
+    }
+
+    private static class LongColumn extends Column {
+        public long[] values = new long[0];
+
+        public LongColumn(String label) { super(label); }
+
+        @Override
+        public Class<?> type() { return long.class; }
+
+        @Override
+        public void grow(int capacity) {
+            super.grow(capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        public void read(ResultSet result, int index, int row) throws SQLException {
+            values[row] = result.getLong(index);
+            if (values[row] == 0 && result.wasNull()) setNull(row);
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : Long.valueOf(values[row]);
+        }
+    }
+
+    private static class DoubleColumn extends Column {
+        public double[] values = new double[0];
+
+        public DoubleColumn(String label) { super(label); }
+
+        @Override
+        public Class<?> type() { return double.class; }
+
+        @Override
+        public void grow(int capacity) {
+            super.grow(capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        public void read(ResultSet result, int index, int row) throws SQLException {
+            values[row] = result.getDouble(index);
+            if (values[row] == 0 && result.wasNull()) setNull(row);
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : Double.valueOf(values[row]);
+        }
+    }
+
+    private static class ObjectColumn extends Column {
+        private final JdbcAdapter adapter;
+        public Object[] values = new Object[0];
+
+        public ObjectColumn(String label, JdbcAdapter adapter) {
+            super(label);
+            this.adapter = adapter;
+        }
+
+        @Override
+        public Class<?> type() { return Object.class; }
+
+        @Override
+        public void grow(int capacity) {
+            super.grow(capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        public void read(ResultSet result, int index, int row) throws SQLException, JdbcAdapterException {
+            Object value = result.getObject(index);
+            if (value == null) setNull(row);
+            else values[row] = adapter.decodeSqlValue(value);
+        }
+
+        @Override
+        public Object get(int row) {
+            return values[row];
+        }
+    }
+
+}
@@ -1,11 +1,21 @@
 package fr.zenexity.dbhelper;
 
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Iterate over a JDBC ResultSet
@@ -13,19 +23,23 @@ import java.util.List;
  */
 public class JdbcIterator<T> implements Iterator<T>, Iterable<T> {
 
+    public static final int defaultBatchSize = 1024;
+
     protected final JdbcResult.Factory<T> factory;
+    protected final JdbcAdapter adapter;
     protected Statement statement;
     protected ResultSet result;
     protected T next;
     protected boolean loadNext;
     private boolean keepOpen;
-    private int limit;
+    protected int limit;
 
     /**
      * if statement is not null then it will be closed with the ResultSet
      */
     public JdbcIterator(Statement statement, ResultSet result, JdbcAdapter adapter, JdbcResult.Factory<T> resultFactory) throws JdbcIteratorException {
         this.factory = resultFactory;
+        this.adapter = adapter;
         this.statement = statement;
         this.result = result;
         next = null;
@@ -163,12 +177,288 @@ public class JdbcIterator<T> implements Iterator<T>, Iterable<T> {
         return list;
     }
 
+    /**
+     * Collect the remaining rows, including a row already loaded by hasNext(),
+     * into primitive column arrays instead of factory objects.
+     */
+    public JdbcColumns columns() throws JdbcIteratorException {
+        if (result == null) return new JdbcColumns();
+        try {
+            JdbcColumns columns = new JdbcColumns(result.getMetaData(), adapter);
+            if (!loadNext) {
+                columns.add(result);
+                loadNext = true;
+            }
+            while (limit != 0 && result.next()) {
+                if (limit > 0) limit--;
+                columns.add(result);
+            }
+            if (!keepOpen) close();
+            return columns;
+        } catch (SQLException e) {
+            throw new JdbcIteratorException(e);
+        } catch (JdbcAdapterException e) {
+            throw new JdbcIteratorException(e);
+        }
+    }
+
+    /**
+     * Sequential stream of the remaining rows, closing the iterator when the
+     * stream is closed: use it in a try-with-resources when the stream may
+     * stop before the end of the rows.
+     */
+    public Stream<T> stream() {
+        return stream(defaultBatchSize);
+    }
+
+    /**
+     * Rows split from a parallel stream are read by batchSize.
+     */
+    public Stream<T> stream(int batchSize) {
+        return StreamSupport.stream(new Batches<T>(this, batchSize), false).onClose(new Runnable() {
+            public void run() {
+                close();
+            }
+        });
+    }
+
+    /**
+     * Publish the remaining rows to one subscriber, read on the executor as
+     * requested.
+     */
+    public JdbcPublisher<T> publisher(Executor executor) {
+        return new JdbcPublisher<T>(this, executor);
+    }
+
+    /**
+     * Read and create the remaining rows in a new background thread, up to
+     * rows ahead of the consumer. This iterator must not be used afterwards,
+     * nor its connection until the prefetch is closed or read to the end.
+     */
+    public Prefetch<T> prefetch(int rows) throws JdbcIteratorException {
+        return new Prefetch<T>(this, rows, Prefetch.newThread, Prefetch.defaultTimeout);
+    }
+
+    /**
+     * Same as prefetch(rows), the rows being read by a task of the executor.
+     */
+    public Prefetch<T> prefetch(int rows, Executor executor) throws JdbcIteratorException {
+        return new Prefetch<T>(this, rows, executor, Prefetch.defaultTimeout);
+    }
+
+    /**
+     * Same as prefetch(rows, executor), the reader stopping when no row is
+     * taken for timeout milliseconds, 0 to wait forever.
+     */
+    public Prefetch<T> prefetch(int rows, Executor executor, long timeout) throws JdbcIteratorException {
+        return new Prefetch<T>(this, rows, executor, timeout);
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return new Batches<T>(this, defaultBatchSize);
+    }
+
+    /**
+     * Spliterator characteristics of the rows.
+     */
+    protected int characteristics() {
+        return Spliterator.ORDERED;
+    }
+
     public T first() throws JdbcIteratorException {
         T e = next();
         if (!keepOpen) close();
         return e;
     }
 
+    /**
+     * Spliterator reading the rows in the calling thread, splitting batches
+     * of rows already created by the factory so they can be processed in
+     * parallel.
+     */
+    public static class Batches<T> implements Spliterator<T> {
+        private final JdbcIterator<T> iterator;
+        private final int batchSize;
+        private final int characteristics;
+
+        public Batches(JdbcIterator<T> iterator, int batchSize) {
+            if (batchSize <= 0) throw new IllegalArgumentException("batchSize: "+ batchSize);
+            this.iterator = iterator;
+            this.batchSize = batchSize;
+            this.characteristics = iterator.characteristics();
+        }
+
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (!iterator.hasNext()) return false;
+            action.accept(iterator.next());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            while (iterator.hasNext()) action.accept(iterator.next());
+        }
+
+        public Spliterator<T> trySplit() {
+            if (!iterator.hasNext()) return null;
+            Object[] batch = new Object[batchSize];
+            int size = 0;
+            while (size < batchSize && iterator.hasNext()) batch[size++] = iterator.next();
+            return Spliterators.spliterator(batch, 0, size, characteristics);
+        }
+
+        /**
+         * The limit of the iterator if any, unknown otherwise.
+         */
+        public long estimateSize() {
+            return iterator.limit >= 0 ? iterator.limit + (iterator.loadNext ? 0 : 1) : Long.MAX_VALUE;
+        }
+
+        public int characteristics() {
+            return characteristics;
+        }
+    }
+
+    /**
+     * Iterator over the rows of a source iterator read by a background task,
+     * the driver fetching the next rows while the consumer processes the
+     * previous ones. Errors of the source are thrown by hasNext() or next()
+     * and close() stops the reader after closing the source. The reader also
+     * stops, closing the source, when the consumer takes no row for the
+     * timeout, so a prefetch dropped without close() releases its statement.
+     * The reader keeps using the connection of the source until then:
+     * connections are not thread-safe, so no other statement must be run on
+     * it in the meantime.
+     */
+    public static class Prefetch<T> extends JdbcIterator<T> {
+        public static final long defaultTimeout = 60000;
+
+        /**
+         * Run each task in a new daemon thread.
+         */
+        static final Executor newThread = new Executor() {
+            public void execute(Runnable task) {
+                Thread thread = new Thread(task, "JdbcPrefetch");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        };
+
+        private final JdbcIterator<T> source;
+        private final JdbcRowQueue queue;
+        private final AtomicBoolean started;
+        private final CountDownLatch stopped;
+        private volatile Thread reader;
+        private boolean done;
+
+        public Prefetch(final JdbcIterator<T> source, int rows, Executor executor, long timeout) throws JdbcIteratorException {
+            super(null, null, source.adapter, null);
+            if (rows <= 0) throw new IllegalArgumentException("rows: "+ rows);
+            this.source = source;
+            this.queue = new JdbcRowQueue(rows, timeout);
+            this.started = new AtomicBoolean();
+            this.stopped = new CountDownLatch(1);
+            this.done = false;
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        if (!started.compareAndSet(false, true)) return;
+                        reader = Thread.currentThread();
+                        try {
+                            queue.read(source);
+                            queue.end();
+                        } catch (Throwable e) {
+                            queue.fail(e);
+                        } finally {
+                            stopped.countDown();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                source.close();
+                throw new JdbcIteratorException(e);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void load() throws JdbcIteratorException {
+            if (!loadNext || done) return;
+            if (limit == 0) {
+                close();
+                return;
+            }
+            Object item;
+            try {
+                item = queue.take();
+            } catch (JdbcIteratorException e) {
+                close();
+                throw e;
+            }
+            if (item == JdbcRowQueue.END) {
+                done = true;
+            } else {
+                if (limit > 0) limit--;
+                next = (T) item;
+                loadNext = false;
+            }
+        }
+
+        /**
+         * Stop the reader and wait for it to close the source, at most the
+         * time to read one row. The source is closed here if the reader has
+         * not started yet.
+         */
+        @Override
+        public void close() throws JdbcIteratorException {
+            done = true;
+            if (started.compareAndSet(false, true)) {
+                queue.cancel();
+                source.close();
+                return;
+            }
+            queue.cancel();
+            if (Thread.currentThread() == reader) return;
+            try {
+                stopped.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JdbcIteratorException(e);
+            }
+        }
+
+        @Override
+        public ResultSet resultSet() throws JdbcIteratorException {
+            throw new JdbcIteratorException("Can't use resultSet with JdbcIterator.Prefetch");
+        }
+
+        @Override
+        public JdbcIterator<T> keepOpen() throws JdbcIteratorException {
+            throw new JdbcIteratorException("Can't use keepOpen with JdbcIterator.Prefetch");
+        }
+
+        @Override
+        public JdbcIterator<T> seek(int row) throws JdbcIteratorException {
+            throw new JdbcIteratorException("Can't use seek with JdbcIterator.Prefetch");
+        }
+
+        @Override
+        public JdbcIterator<T> offset(int row) throws JdbcIteratorException {
+            throw new JdbcIteratorException("Can't use offset with JdbcIterator.Prefetch");
+        }
+
+        @Override
+        public JdbcColumns columns() throws JdbcIteratorException {
+            throw new JdbcIteratorException("Can't use columns with JdbcIterator.Prefetch");
+        }
+
+        @Override
+        public Prefetch<T> prefetch(int rows) throws JdbcIteratorException {
+            throw new JdbcIteratorException("Can't use prefetch with JdbcIterator.Prefetch");
+        }
+    }
+
     public static class Window<T> extends JdbcIterator<T> {
         public Window(Statement statement, ResultSet result, int offset, int size, JdbcAdapter adapter, JdbcResult.Factory<T> resultFactory) throws JdbcIteratorException {
             super(statement, result, adapter, resultFactory);
@@ -178,11 +468,30 @@ public class JdbcIterator<T> implements Iterator<T>, Iterable<T> {
                 offset = 0;
             }
             if (size > 0) {
-                super.seek(offset);
+                if (forwardOnly()) skip(offset);
+                else super.seek(offset);
                 super.limit(size);
             } else close();
         }
 
+        private boolean forwardOnly() throws JdbcIteratorException {
+            try {
+                return result != null && result.getType() == ResultSet.TYPE_FORWARD_ONLY;
+            } catch (SQLException e) {
+                throw new JdbcIteratorException(e);
+            }
+        }
+
+        private void skip(int rows) throws JdbcIteratorException {
+            try {
+                for (int i = 0; i < rows; i++) {
+                    if (!result.next()) break;
+                }
+            } catch (SQLException e) {
+                throw new JdbcIteratorException(e);
+            }
+        }
+
         @Override
         public JdbcIterator<T> keepOpen() throws JdbcIteratorException {
             throw new JdbcIteratorException("Can't use keepOpen with JdbcIterator.Window");
@@ -204,4 +513,127 @@ public class JdbcIterator<T> implements Iterator<T>, Iterable<T> {
         }
     }
 
+    /**
+     * Iterate over all the pages of a Sql.Keyset, the next page being queried
+     * when the previous one is consumed. token() gives the position of the
+     * last row returned by next(), to resume the iteration later.
+     */
+    public static class Keyset<T> extends JdbcIterator<T> {
+        private final Jdbc jdbc;
+        private final Sql.Keyset keyset;
+        private final KeyFactory<T> keyFactory;
+        private Object[] lastKey;
+        private Sql.Keyset.Token token;
+
+        public Keyset(Jdbc jdbc, Sql.Keyset keyset, Sql.Keyset.Token start, JdbcResult.Factory<T> resultFactory) throws JdbcException {
+            super(null, null, jdbc.adapter, new KeyFactory<T>(resultFactory, keyset.labels()));
+            this.jdbc = jdbc;
+            this.keyset = keyset;
+            this.keyFactory = (KeyFactory<T>) factory;
+            this.lastKey = null;
+            this.token = start;
+            query(start);
+        }
+
+        private void query(Sql.Keyset.Token after) throws JdbcException {
+            JdbcStatement qs = jdbc.newStatement(keyset.page(after, jdbc.dialect()));
+            try {
+                result = qs.executeQuery();
+                statement = qs.statement;
+            } finally {
+                if (result == null) qs.close();
+            }
+            try {
+                factory.init(adapter, result);
+            } catch (SQLException e) {
+                close();
+                throw new JdbcIteratorException(e);
+            } catch (JdbcResultException e) {
+                close();
+                throw new JdbcIteratorException(e);
+            }
+        }
+
+        @Override
+        protected void load() throws JdbcIteratorException {
+            super.load();
+            while (loadNext && result == null && limit != 0 && keyFactory.rows == keyset.size) {
+                query(new Sql.Keyset.Token(keyFactory.key));
+                super.load();
+            }
+        }
+
+        @Override
+        public T next() throws JdbcIteratorException {
+            load();
+            if (!loadNext) lastKey = keyFactory.key;
+            return super.next();
+        }
+
+        /**
+         * Position of the last row returned by next(), or the start token.
+         */
+        public Sql.Keyset.Token token() {
+            if (lastKey != null) {
+                token = new Sql.Keyset.Token(lastKey);
+                lastKey = null;
+            }
+            return token;
+        }
+
+        @Override
+        public JdbcIterator<T> keepOpen() throws JdbcIteratorException {
+            throw new JdbcIteratorException("Can't use keepOpen with JdbcIterator.Keyset");
+        }
+
+        @Override
+        public JdbcIterator<T> seek(int row) throws JdbcIteratorException {
+            throw new JdbcIteratorException("Can't use seek with JdbcIterator.Keyset");
+        }
+
+        @Override
+        public JdbcIterator<T> offset(int row) throws JdbcIteratorException {
+            throw new JdbcIteratorException("Can't use offset with JdbcIterator.Keyset");
+        }
+    }
+
+    /**
+     * Keep the key columns of the last created row.
+     */
+    private static class KeyFactory<T> implements JdbcResult.Factory<T> {
+        private final JdbcResult.Factory<T> factory;
+        private final List<String> labels;
+        private int[] indexes;
+        public Object[] key;
+        public int rows;
+
+        public KeyFactory(JdbcResult.Factory<T> factory, List<String> labels) {
+            this.factory = factory;
+            this.labels = labels;
+        }
+
+        public void init(JdbcAdapter adapter, ResultSet result) throws SQLException, JdbcResultException {
+            ResultSetMetaData meta = result.getMetaData();
+            int count = meta.getColumnCount();
+            indexes = new int[labels.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                for (int column = 1; column <= count && indexes[i] == 0; column++) {
+                    if (meta.getColumnLabel(column).equalsIgnoreCase(labels.get(i))) indexes[i] = column;
+                }
+                if (indexes[i] == 0) throw new JdbcResultException(new NoSuchFieldException(labels.get(i)));
+            }
+            rows = 0;
+            factory.init(adapter, result);
+        }
+
+        public T create(ResultSet result) throws SQLException, JdbcResultException {
+            Object[] rowKey = new Object[indexes.length];
+            for (int i = 0; i < indexes.length; i++) rowKey[i] = result.getObject(indexes[i]);
+            T row = factory.create(result);
+            key = rowKey;
+            rows++;
+            return row;
+        }
+    }
+
 }
@@ -0,0 +1,267 @@
+package fr.zenexity.dbhelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+/**
+ * Run the partitions of a query concurrently, each one streamed on its own
+ * connection taken from a supplier and closed at the end of the partition.
+ * Rows are merged into one iterator, in the order of the partitions when
+ * ordered, as soon as they are read otherwise. The partitions run on the
+ * given executor, or on a pool of threads created for each query.
+ */
+public class JdbcParallel {
+
+    public static final int defaultQueueSize = 1000;
+
+    private final Supplier<Jdbc> connections;
+    private final Executor executor;
+    private int threads;
+    private int queueSize;
+    private boolean ordered;
+
+    public JdbcParallel(Supplier<Jdbc> connections) {
+        this(connections, null);
+    }
+
+    /**
+     * Run the partitions on the executor, bounded by its threads.
+     */
+    public JdbcParallel(Supplier<Jdbc> connections, Executor executor) {
+        this.connections = connections;
+        this.executor = executor;
+        this.threads = 0;
+        this.queueSize = defaultQueueSize;
+        this.ordered = false;
+    }
+
+    /**
+     * Maximum number of partitions running at once, 0 to run them all.
+     * Ignored when running on a given executor.
+     */
+    public JdbcParallel threads(int threads) {
+        if (threads < 0) throw new IllegalArgumentException("threads: "+ threads);
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Number of rows read ahead by each partition in ordered mode, by all the
+     * partitions otherwise.
+     */
+    public JdbcParallel queueSize(int rows) {
+        if (rows <= 0) throw new IllegalArgumentException("rows: "+ rows);
+        this.queueSize = rows;
+        return this;
+    }
+
+    /**
+     * Return all the rows of a partition before the rows of the next one.
+     */
+    public JdbcParallel ordered(boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+
+    /**
+     * Split [min, max] in count ranges of column values.
+     */
+    public static List<Sql.Where> partitions(String column, long min, long max, int count) {
+        if (count <= 0) throw new IllegalArgumentException("count: "+ count);
+        if (max < min) throw new IllegalArgumentException("max "+ max +" < min "+ min);
+        List<Sql.Where> partitions = new ArrayList<Sql.Where>(count);
+        // unsigned offsets from min, max - min may not fit in a long
+        long range = max - min;
+        long step = Long.divideUnsigned(range, count) + 1;
+        for (long offset = 0;; offset += step) {
+            long low = min + offset;
+            if (step == 0 || Long.compareUnsigned(range - offset, step) < 0) {
+                partitions.add(Sql.where(column +">=? AND "+ column +"<=?", low, max));
+                return partitions;
+            }
+            partitions.add(Sql.where(column +">=? AND "+ column +"<?", low, low + step));
+        }
+    }
+
+    public <T> JdbcIterator<T> execute(Sql.Select query, String column, long min, long max, int count, Supplier<? extends JdbcResult.Factory<T>> factories) throws JdbcException {
+        return execute(query, partitions(column, min, max, count), factories);
+    }
+
+    public <T> JdbcIterator<T> execute(Sql.Select query, String column, long min, long max, int count, Class<T> resultClass) throws JdbcException {
+        return execute(query, partitions(column, min, max, count), resultClass);
+    }
+
+    public <T> JdbcIterator<T> execute(Sql.Select query, List<Sql.Where> partitions, final Class<T> resultClass) throws JdbcException {
+        return execute(query, partitions, new Supplier<JdbcResult.Factory<T>>() {
+            public JdbcResult.Factory<T> get() {
+                return JdbcResult.buildFactory(resultClass);
+            }
+        });
+    }
+
+    public <T> JdbcIterator<T> execute(Sql.Select query, List<Sql.Where> partitions, final Class<T> resultClass, final String... fields) throws JdbcException {
+        return execute(query, partitions, new Supplier<JdbcResult.Factory<T>>() {
+            public JdbcResult.Factory<T> get() {
+                return JdbcResult.buildFactory(resultClass, fields);
+            }
+        });
+    }
+
+    /**
+     * Each partition gets a new factory from the supplier, factories being
+     * stateful once initialized.
+     */
+    public <T> JdbcIterator<T> execute(Sql.Select query, List<Sql.Where> partitions, Supplier<? extends JdbcResult.Factory<T>> factories) throws JdbcException {
+        Merge<T> merge = new Merge<T>(partitions.size(), ordered, queueSize);
+        if (partitions.isEmpty()) return merge;
+        if (executor != null) {
+            submit(executor, merge, query, partitions, factories);
+            return merge;
+        }
+        int poolSize = threads == 0 ? partitions.size() : Math.min(threads, partitions.size());
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "JdbcParallel");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            submit(pool, merge, query, partitions, factories);
+        } finally {
+            pool.shutdown();
+        }
+        return merge;
+    }
+
+    private <T> void submit(Executor executor, Merge<T> merge, Sql.Select query, List<Sql.Where> partitions, Supplier<? extends JdbcResult.Factory<T>> factories) {
+        for (int i = 0; i < partitions.size(); i++) {
+            Sql.Select partition = Sql.clone(query).andWhere(partitions.get(i));
+            Partition<T> task = new Partition<T>(merge, i, connections, partition, factories);
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.queue.fail(e);
+            }
+        }
+    }
+
+    /**
+     * Read one partition into the queue of the merge.
+     */
+    private static final class Partition<T> implements Runnable {
+        final JdbcRowQueue queue;
+        private final Supplier<Jdbc> connections;
+        private final Sql.Select query;
+        private final Supplier<? extends JdbcResult.Factory<T>> factories;
+
+        public Partition(Merge<T> merge, int index, Supplier<Jdbc> connections, Sql.Select query, Supplier<? extends JdbcResult.Factory<T>> factories) {
+            this.queue = merge.queues.get(merge.queues.size() == 1 ? 0 : index);
+            this.connections = connections;
+            this.query = query;
+            this.factories = factories;
+        }
+
+        public void run() {
+            try {
+                if (queue.cancelled()) return;
+                Jdbc jdbc = connections.get();
+                try {
+                    queue.read(jdbc.stream(query, factories.get()));
+                } finally {
+                    jdbc.close();
+                }
+                queue.end();
+            } catch (Throwable e) {
+                queue.fail(e);
+            }
+        }
+    }
+
+    /**
+     * Iterator over the rows read by the partitions.
+     */
+    private static final class Merge<T> extends JdbcIterator<T> {
+        private final List<JdbcRowQueue> queues;
+        private final boolean ordered;
+        private int remaining;
+        private int current;
+
+        public Merge(int partitions, boolean ordered, int queueSize) {
+            super(null, null, null, null);
+            this.ordered = ordered;
+            int count = ordered ? partitions : 1;
+            this.queues = new ArrayList<JdbcRowQueue>(count);
+            for (int i = 0; i < count; i++) queues.add(new JdbcRowQueue(queueSize));
+            this.remaining = partitions;
+            this.current = 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void load() throws JdbcIteratorException {
+            if (!loadNext) return;
+            if (limit == 0) close();
+            while (remaining > 0) {
+                Object item;
+                try {
+                    item = queues.get(current).take();
+                } catch (JdbcIteratorException e) {
+                    close();
+                    throw e;
+                }
+                if (item == JdbcRowQueue.END) {
+                    remaining--;
+                    if (ordered) current++;
+                } else {
+                    if (limit > 0) limit--;
+                    next = (T) item;
+                    loadNext = false;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Stop the partitions still running.
+         */
+        @Override
+        public void close() throws JdbcIteratorException {
+            remaining = 0;
+            for (JdbcRowQueue queue : queues) queue.cancel();
+        }
+
+        @Override
+        public JdbcIterator<T> keepOpen() throws JdbcIteratorException {
+            throw new JdbcIteratorException("Can't use keepOpen with JdbcParallel");
+        }
+
+        @Override
+        public JdbcIterator<T> seek(int row) throws JdbcIteratorException {
+            throw new JdbcIteratorException("Can't use seek with JdbcParallel");
+        }
+
+        @Override
+        public JdbcIterator<T> offset(int row) throws JdbcIteratorException {
+            throw new JdbcIteratorException("Can't use offset with JdbcParallel");
+        }
+
+        @Override
+        public JdbcColumns columns() throws JdbcIteratorException {
+            throw new JdbcIteratorException("Can't use columns with JdbcParallel");
+        }
+
+        @Override
+        protected int characteristics() {
+            return ordered ? Spliterator.ORDERED : 0;
+        }
+    }
+
+}
@@ -0,0 +1,407 @@
+package fr.zenexity.dbhelper;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+/**
+ * Pool of Jdbc connections opened from a DriverManager URL or a DataSource.
+ * Each borrow returns a new Jdbc with the default settings, its connection
+ * failing once the Jdbc is closed. Closing it gives the connection back to
+ * the pool, rolling back a pending transaction and restoring the auto-commit
+ * mode the connection was opened with. Connections are validated when
+ * borrowed and closed when idle for too long, each one keeps its own
+ * statement cache.
+ */
+public class JdbcPool implements Supplier<Jdbc> {
+
+    public static final int defaultMaxSize = 10;
+    public static final long defaultBorrowTimeout = 30000;
+    public static final long defaultIdleTimeout = 600000;
+    public static final int defaultValidationTimeout = 5;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final DataSource dataSource;
+    private final JdbcAdapter adapter;
+
+    private int maxSize = defaultMaxSize;
+    private long borrowTimeout = defaultBorrowTimeout;
+    private long idleTimeout = defaultIdleTimeout;
+    private int validationTimeout = defaultValidationTimeout;
+    private int statementCache = 0;
+
+    private final LinkedList<Slot> idle;
+    private int size;
+    private boolean closed;
+
+    private JdbcPool(String url, String user, String password, DataSource dataSource, JdbcAdapter adapter) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.dataSource = dataSource;
+        this.adapter = adapter;
+        this.idle = new LinkedList<Slot>();
+        this.size = 0;
+        this.closed = false;
+    }
+
+    public JdbcPool(String url, String user, String password, JdbcAdapter adapter) {
+        this(url, user, password, null, adapter);
+    }
+
+    public JdbcPool(String url, String user, String password) {
+        this(url, user, password, null, JdbcAdapter.defaultAdapter);
+    }
+
+    public JdbcPool(String url) {
+        this(url, null, null, null, JdbcAdapter.defaultAdapter);
+    }
+
+    public JdbcPool(DataSource dataSource, JdbcAdapter adapter) {
+        this(null, null, null, dataSource, adapter);
+    }
+
+    public JdbcPool(DataSource dataSource) {
+        this(null, null, null, dataSource, JdbcAdapter.defaultAdapter);
+    }
+
+    /**
+     * Maximum number of open connections, borrowed or idle.
+     */
+    public synchronized JdbcPool maxSize(int connections) {
+        if (connections <= 0) throw new IllegalArgumentException("connections: "+ connections);
+        maxSize = connections;
+        notifyAll();
+        return this;
+    }
+
+    /**
+     * Milliseconds to wait for a connection when the pool is full.
+     */
+    public synchronized JdbcPool borrowTimeout(long millis) {
+        if (millis < 0) throw new IllegalArgumentException("millis: "+ millis);
+        borrowTimeout = millis;
+        return this;
+    }
+
+    /**
+     * Milliseconds before closing an idle connection, 0 to keep them open.
+     */
+    public synchronized JdbcPool idleTimeout(long millis) {
+        if (millis < 0) throw new IllegalArgumentException("millis: "+ millis);
+        idleTimeout = millis;
+        return this;
+    }
+
+    /**
+     * Seconds given to Connection.isValid() when borrowing, 0 for no limit.
+     */
+    public synchronized JdbcPool validationTimeout(int seconds) {
+        if (seconds < 0) throw new IllegalArgumentException("seconds: "+ seconds);
+        validationTimeout = seconds;
+        return this;
+    }
+
+    /**
+     * Capacity of the statement cache of each connection opened from now on,
+     * 0 to disable it.
+     */
+    public synchronized JdbcPool statementCache(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("capacity: "+ capacity);
+        statementCache = capacity;
+        return this;
+    }
+
+    /**
+     * Number of open connections, borrowed or idle.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int idle() {
+        return idle.size();
+    }
+
+    /**
+     * Same as borrow().
+     */
+    public Jdbc get() throws JdbcException {
+        return borrow();
+    }
+
+    /**
+     * Take an idle connection, open a new one if the pool is not full or wait
+     * for a connection to be given back.
+     */
+    public Jdbc borrow() throws JdbcException {
+        final long deadline = System.currentTimeMillis() + borrowTimeout;
+        while (true) {
+            Slot slot = null;
+            final int timeout;
+            closeAll(evict());
+            synchronized (this) {
+                while (!closed && idle.isEmpty() && size >= maxSize) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) throw new JdbcException("No connection available after "+ borrowTimeout +" ms");
+                    try {
+                        wait(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new JdbcException(e);
+                    }
+                }
+                if (closed) throw new JdbcException("Pool closed");
+                if (idle.isEmpty()) size++;
+                else slot = idle.removeFirst();
+                timeout = validationTimeout;
+            }
+
+            if (slot == null) return new Pooled(this, open());
+            if (valid(slot, timeout)) return new Pooled(this, slot);
+            discard(slot);
+        }
+    }
+
+    /**
+     * Run the work with a borrowed connection, given back afterwards.
+     */
+    public <R> R run(Jdbc.Work<R> work) throws JdbcException {
+        Jdbc jdbc = borrow();
+        try {
+            return work.run(jdbc);
+        } finally {
+            jdbc.close();
+        }
+    }
+
+    /**
+     * Asynchronous queries on this pool, run on JdbcAsync.newExecutor(maxSize)
+     * so that tasks do not wait for a connection.
+     */
+    public JdbcAsync async() {
+        int threads;
+        synchronized (this) {
+            threads = maxSize;
+        }
+        return new JdbcAsync(this, threads);
+    }
+
+    public JdbcAsync async(Executor executor) {
+        return new JdbcAsync(this, executor);
+    }
+
+    /**
+     * Close the idle connections, borrowed ones are closed when given back.
+     */
+    public void close() throws JdbcException {
+        List<Slot> connections;
+        synchronized (this) {
+            closed = true;
+            connections = new ArrayList<Slot>(idle);
+            idle.clear();
+            notifyAll();
+        }
+        closeAll(connections);
+    }
+
+    private Slot open() throws JdbcException {
+        try {
+            Connection connection = dataSource != null ? dataSource.getConnection() : DriverManager.getConnection(url, user, password);
+            Slot slot = new Slot(connection, connection.getAutoCommit());
+            slot.statementCache = newStatementCache(connection);
+            return slot;
+        } catch (SQLException e) {
+            released();
+            throw new JdbcException(e);
+        } catch (RuntimeException e) {
+            released();
+            throw e;
+        }
+    }
+
+    private JdbcStatementCache newStatementCache(Connection connection) {
+        int capacity;
+        synchronized (this) {
+            capacity = statementCache;
+        }
+        return capacity > 0 ? new JdbcStatementCache(connection, capacity) : null;
+    }
+
+    private static boolean valid(Slot slot, int timeout) {
+        try {
+            return slot.connection.isValid(timeout);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void giveBack(Slot slot, JdbcStatementCache cache) {
+        try {
+            if (cache != slot.statementCache) {
+                // replaced by the borrower, who closed the previous one
+                if (cache != null) cache.close();
+                slot.statementCache = newStatementCache(slot.connection);
+            }
+            if (slot.connection.isClosed()) {
+                discard(slot);
+                return;
+            }
+            if (!slot.connection.getAutoCommit()) slot.connection.rollback();
+            if (slot.connection.getAutoCommit() != slot.autoCommit) slot.connection.setAutoCommit(slot.autoCommit);
+        } catch (SQLException e) {
+            discard(slot);
+            return;
+        } catch (JdbcException e) {
+            discard(slot);
+            return;
+        }
+        synchronized (this) {
+            if (!closed) {
+                slot.lastUsed = System.currentTimeMillis();
+                idle.addFirst(slot);
+                notifyAll();
+                return;
+            }
+        }
+        discard(slot);
+    }
+
+    private void discard(Slot slot) {
+        try {
+            if (slot.statementCache != null) slot.statementCache.close();
+            slot.connection.close();
+        } catch (JdbcException e) {
+            // already unusable
+        } catch (SQLException e) {
+            // already unusable
+        } finally {
+            released();
+        }
+    }
+
+    private synchronized void released() {
+        size--;
+        notifyAll();
+    }
+
+    /**
+     * Remove the connections idle for too long, the oldest being last.
+     */
+    private synchronized List<Slot> evict() {
+        List<Slot> evicted = new ArrayList<Slot>();
+        if (idleTimeout == 0) return evicted;
+        long oldest = System.currentTimeMillis() - idleTimeout;
+        for (Iterator<Slot> it = idle.descendingIterator(); it.hasNext();) {
+            Slot slot = it.next();
+            if (slot.lastUsed > oldest) break;
+            it.remove();
+            evicted.add(slot);
+        }
+        return evicted;
+    }
+
+    private void closeAll(List<Slot> connections) {
+        for (Slot slot : connections) discard(slot);
+    }
+
+    /**
+     * A pooled connection and what is kept between borrows.
+     */
+    private static final class Slot {
+        public final Connection connection;
+        public final boolean autoCommit;
+        public JdbcStatementCache statementCache;
+        public long lastUsed;
+
+        public Slot(Connection connection, boolean autoCommit) {
+            this.connection = connection;
+            this.autoCommit = autoCommit;
+        }
+    }
+
+    /**
+     * Connection of one borrow, failing once given back. unwrap() returns
+     * the pooled connection.
+     */
+    private static final class Lease implements InvocationHandler {
+        private final Connection connection;
+        volatile boolean released;
+
+        public Lease(Connection connection) {
+            this.connection = connection;
+        }
+
+        public Connection proxy() {
+            return (Connection) Proxy.newProxyInstance(JdbcPool.class.getClassLoader(), new Class<?>[] { Connection.class }, this);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (method.getDeclaringClass() == Object.class) {
+                if (name.equals("equals")) return proxy == args[0];
+                if (name.equals("hashCode")) return System.identityHashCode(proxy);
+                if (name.equals("toString")) return "Pooled "+ connection;
+            }
+            if (name.equals("unwrap") && ((Class<?>) args[0]).isInstance(connection)) return connection;
+            if (name.equals("isWrapperFor") && ((Class<?>) args[0]).isInstance(connection)) return true;
+            if (released) {
+                if (name.equals("isClosed")) return true;
+                if (name.equals("close")) return null;
+                throw new SQLException("Connection given back to the pool");
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static final class Pooled extends Jdbc {
+        private final JdbcPool pool;
+        private final Slot slot;
+        private final Lease lease;
+
+        public Pooled(JdbcPool pool, Slot slot) {
+            this(pool, slot, new Lease(slot.connection));
+        }
+
+        private Pooled(JdbcPool pool, Slot slot, Lease lease) {
+            super(lease.proxy(), pool.adapter);
+            this.pool = pool;
+            this.slot = slot;
+            this.lease = lease;
+            if (slot.statementCache != null) statementCache(slot.statementCache);
+        }
+
+        /**
+         * Give the connection back to the pool.
+         */
+        @Override
+        public void close() throws JdbcException {
+            synchronized (pool) {
+                if (lease.released) return;
+                lease.released = true;
+            }
+            JdbcStatementCache cache = statementCache();
+            statementCache((JdbcStatementCache) null);
+            pool.giveBack(slot, cache);
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package fr.zenexity.dbhelper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publish the rows of an iterator to one subscriber, reading the result only
+ * as far as requested: at most one row is read ahead to signal the end.
+ * Rows are read and sent on the executor, the iterator is closed at the end
+ * of the rows, on error or when the subscription is cancelled.
+ */
+public class JdbcPublisher<T> implements Flow.Publisher<T> {
+
+    private final JdbcIterator<T> iterator;
+    private final Executor executor;
+    private final AtomicBoolean subscribed;
+
+    public JdbcPublisher(JdbcIterator<T> iterator, Executor executor) {
+        this.iterator = iterator;
+        this.executor = executor;
+        this.subscribed = new AtomicBoolean(false);
+    }
+
+    /**
+     * Only one subscriber can read the rows.
+     */
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (subscriber == null) throw new NullPointerException();
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                public void request(long n) {}
+                public void cancel() {}
+            });
+            subscriber.onError(new IllegalStateException("JdbcPublisher already subscribed"));
+            return;
+        }
+        Subscription<T> subscription = new Subscription<T>(iterator, executor, subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private static final class Subscription<T> implements Flow.Subscription, Runnable {
+        private final JdbcIterator<T> iterator;
+        private final Executor executor;
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand;
+        private final AtomicInteger pending;
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        private boolean done;
+
+        public Subscription(JdbcIterator<T> iterator, Executor executor, Flow.Subscriber<? super T> subscriber) {
+            this.iterator = iterator;
+            this.executor = executor;
+            this.subscriber = subscriber;
+            this.demand = new AtomicLong();
+            this.pending = new AtomicInteger();
+            this.cancelled = false;
+            this.done = false;
+        }
+
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("request: "+ n);
+                cancelled = true;
+            } else {
+                long current, next;
+                do {
+                    current = demand.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!demand.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) executor.execute(this);
+        }
+
+        /**
+         * Send the requested rows, only one thread at a time.
+         */
+        public void run() {
+            int missed = 1;
+            while (true) {
+                if (!done) drain();
+                missed = pending.addAndGet(-missed);
+                if (missed == 0) break;
+            }
+        }
+
+        private void drain() {
+            long requested = demand.get();
+            long emitted = 0;
+            while (!cancelled) {
+                T row;
+                try {
+                    if (!iterator.hasNext()) {
+                        finish(null);
+                        return;
+                    }
+                    if (emitted == requested) {
+                        requested = demand.addAndGet(-emitted);
+                        emitted = 0;
+                        if (requested == 0) return;
+                    }
+                    row = iterator.next();
+                } catch (RuntimeException e) {
+                    finish(e);
+                    return;
+                }
+                try {
+                    subscriber.onNext(row);
+                } catch (RuntimeException e) {
+                    // a failing subscriber cancels its subscription
+                    cancelled = true;
+                    break;
+                }
+                emitted++;
+            }
+            finish(invalidRequest);
+        }
+
+        private void finish(Throwable error) {
+            done = true;
+            try {
+                iterator.close();
+            } catch (JdbcException e) {
+                if (error == null && !cancelled) error = e;
+            }
+            if (error != null) subscriber.onError(error);
+            else if (!cancelled) subscriber.onComplete();
+        }
+    }
+
+}
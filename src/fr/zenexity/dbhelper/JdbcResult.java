@@ -1,19 +1,26 @@
 package fr.zenexity.dbhelper;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class JdbcResult {
 
@@ -79,6 +86,19 @@ public class JdbcResult {
     }
 
 
+    public static <T> CompiledClassFactory<T> compiledClassFactory(Class<T> objectClass) {
+        return new CompiledClassFactory<T>(objectClass, null);
+    }
+
+    public static <T> CompiledClassFactory<T> compiledClassFactory(Class<T> objectClass, String... fields) {
+        return new CompiledClassFactory<T>(objectClass, Arrays.asList(fields));
+    }
+
+    public static <T> CompiledClassFactory<T> compiledClassFactory(Class<T> objectClass, List<String> fields) {
+        return new CompiledClassFactory<T>(objectClass, fields);
+    }
+
+
     public static MapFactory mapFactory() {
         return new MapFactory();
     }
@@ -139,6 +159,7 @@ public class JdbcResult {
         private final String field;
         private int columnIndex;
         private JdbcAdapter adapter;
+        private Class<?> typed;
 
         public PrimitiveFactory(Class<T> objectClass, int columnIndex) {
             this.objectClass = objectClass;
@@ -154,8 +175,8 @@ public class JdbcResult {
 
         public void init(JdbcAdapter adapter, ResultSet result) throws SQLException {
             this.adapter = adapter;
+            ResultSetMetaData meta = result.getMetaData();
             if (field != null) {
-                ResultSetMetaData meta = result.getMetaData();
                 int count = meta.getColumnCount();
                 for (int i = 1; i <= count; i++) {
                     if (meta.getColumnLabel(i).equalsIgnoreCase(field)) {
@@ -164,11 +185,12 @@ public class JdbcResult {
                     }
                 }
             }
+            typed = columnIndex <= meta.getColumnCount() ? typedColumn(adapter, meta, columnIndex, objectClass) : null;
         }
 
         public T create(ResultSet result) throws SQLException, JdbcResultException {
             try {
-                return adapter.cast(objectClass, result.getObject(columnIndex));
+                return read(adapter, result, columnIndex, objectClass, typed);
             } catch (SQLException e) {
                 throw e;
             } catch (Exception e) {
@@ -177,19 +199,55 @@ public class JdbcResult {
         }
     }
 
+    /**
+     * Map rows to objects by setting the public fields named like the columns.
+     * The columns to fields mappings are resolved once per class, fields and
+     * column labels, and cached with their class, up to mappingCacheSize
+     * mappings per class.
+     */
     public static class ClassFactory<T> implements Factory<T> {
-        private final Class<T> objectClass;
+        public static final int mappingCacheSize = 256;
+        private static final Mappings<List<ColumnInfo>> mappings = new Mappings<List<ColumnInfo>>();
+
+        protected final Class<T> objectClass;
         private final Set<String> fields;
-        private List<ColumnInfo> columns;
-        private JdbcAdapter adapter;
+        protected List<ColumnInfo> columns;
+        protected JdbcAdapter adapter;
+        protected MappingKey mappingKey;
+        protected Class<?>[] typedColumns;
 
         public ClassFactory(Class<T> objectClass, Collection<String> fields) {
             this.objectClass = objectClass;
             this.fields = fields == null ? null : new HashSet<String>(fields);
         }
 
+        public static void clearMappings() {
+            mappings.clear();
+        }
+
         public void init(JdbcAdapter adapter, ResultSet result) throws SQLException, JdbcResultException {
             this.adapter = adapter;
+            ResultSetMetaData meta = result.getMetaData();
+            String[] labels = new String[meta.getColumnCount()];
+            for (int i = 0; i < labels.length; i++) labels[i] = meta.getColumnLabel(i + 1);
+
+            mappingKey = new MappingKey(objectClass, fields, labels, null);
+            columns = mappings.get(mappingKey);
+            if (columns == null) {
+                columns = Collections.unmodifiableList(resolve(labels));
+                mappings.put(mappingKey, columns);
+            }
+
+            typedColumns = new Class<?>[columns.size()];
+            for (int i = 0; i < typedColumns.length; i++) {
+                ColumnInfo column = columns.get(i);
+                Class<?> type = column.field.getType();
+                if (type.isPrimitive() || type == String.class)
+                    typedColumns[i] = typedColumn(adapter, meta, column.index, type);
+            }
+        }
+
+        private List<ColumnInfo> resolve(String[] labels) throws JdbcResultException {
             Map<String, String> labelsToFields = new HashMap<String, String>();
             for (Field objectField : objectClass.getFields()) {
                 String fieldName = objectField.getName();
@@ -198,10 +256,8 @@ public class JdbcResult {
 
             Map<String, Integer> fieldsIndexes = new HashMap<String, Integer>();
 
-            ResultSetMetaData meta = result.getMetaData();
-            int count = meta.getColumnCount();
-            for (int i = 1; i <= count; i++) {
-                String label = meta.getColumnLabel(i);
+            for (int i = 1; i <= labels.length; i++) {
+                String label = labels[i - 1];
                 if (label.length() != 0) {
                     String name = labelsToFields.get(label.toLowerCase());
                     if (name != null) label = name;
@@ -217,27 +273,31 @@ public class JdbcResult {
                 }
             }
 
-            columns = new ArrayList<ColumnInfo>();
+            List<ColumnInfo> resolved = new ArrayList<ColumnInfo>();
             try {
                 for (Map.Entry<String, Integer> fieldIndex : fieldsIndexes.entrySet()) {
                     Field objField = objectClass.getField(fieldIndex.getKey());
                     if ((objField.getModifiers() & (Modifier.STATIC | Modifier.TRANSIENT)) != 0)
                         throw new IllegalArgumentException(fieldIndex.getKey());
-                    columns.add(new ColumnInfo(fieldIndex.getValue(), objField));
+                    resolved.add(new ColumnInfo(fieldIndex.getValue(), objField));
                 }
             } catch (Exception e) {
                 throw new JdbcResultException(e);
             }
+            return resolved;
         }
 
         public T create(ResultSet result) throws SQLException, JdbcResultException {
             ColumnInfo currentColumn = null;
             try {
                 T obj = objectClass.newInstance();
-                for (ColumnInfo column : columns) {
+                for (int i = 0; i < typedColumns.length; i++) {
+                    ColumnInfo column = columns.get(i);
                     currentColumn = column;
-                    Object value = result.getObject(column.index);
-                    column.field.set(obj, adapter.cast(column.field.getType(), value));
+                    if (typedColumns[i] == null || !setTyped(obj, column, typedColumns[i], result)) {
+                        Object value = result.getObject(column.index);
+                        column.field.set(obj, adapter.cast(column.field.getType(), value));
+                    }
                 }
                 return obj;
             } catch (SQLException e) {
@@ -248,7 +308,39 @@ public class JdbcResult {
             }
         }
 
-        private static class ColumnInfo {
+        /**
+         * Set a primitive or String field with a typed getter, false if the
+         * column is null.
+         */
+        private static boolean setTyped(Object obj, ColumnInfo column, Class<?> type, ResultSet result)
+                throws SQLException, IllegalAccessException {
+            Field field = column.field;
+            int index = column.index;
+            if (type == int.class) {
+                int value = result.getInt(index);
+                if (value == 0 && result.wasNull()) return false;
+                field.setInt(obj, value);
+            } else if (type == long.class) {
+                long value = result.getLong(index);
+                if (value == 0 && result.wasNull()) return false;
+                field.setLong(obj, value);
+            } else if (type == double.class) {
+                double value = result.getDouble(index);
+                if (value == 0 && result.wasNull()) return false;
+                field.setDouble(obj, value);
+            } else if (type == boolean.class) {
+                boolean value = result.getBoolean(index);
+                if (!value && result.wasNull()) return false;
+                field.setBoolean(obj, value);
+            } else {
+                String value = result.getString(index);
+                if (value == null) return false;
+                field.set(obj, value);
+            }
+            return true;
+        }
+
+        protected static class ColumnInfo {
             public final int index;
             public final Field field;
 
@@ -257,6 +349,368 @@ public class JdbcResult {
                 this.field = field;
             }
         }
+
+        protected static final class MappingKey {
+            private final Class<?> objectClass;
+            private final Set<String> fields;
+            private final String[] labels;
+            private final int[] types;
+            private final int hash;
+
+            public MappingKey(Class<?> objectClass, Set<String> fields, String[] labels, int[] types) {
+                this.objectClass = objectClass;
+                this.fields = fields;
+                this.labels = labels;
+                this.types = types;
+                this.hash = ((objectClass.hashCode() * 31 + (fields == null ? 0 : fields.hashCode())) * 31
+                        + Arrays.hashCode(labels)) * 31 + Arrays.hashCode(types);
+            }
+
+            public MappingKey withTypes(int[] columnTypes) {
+                return new MappingKey(objectClass, fields, labels, columnTypes);
+            }
+
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
+            @Override
+            public boolean equals(Object obj) {
+                if (this == obj) return true;
+                if (!(obj instanceof MappingKey)) return false;
+                MappingKey key = (MappingKey) obj;
+                return hash == key.hash
+                    && objectClass == key.objectClass
+                    && (fields == null ? key.fields == null : fields.equals(key.fields))
+                    && Arrays.equals(labels, key.labels)
+                    && Arrays.equals(types, key.types);
+            }
+        }
+
+        /**
+         * Concurrent maps stored along their class with a ClassValue, so the
+         * cache doesn't keep the classes loaded. A map going over
+         * mappingCacheSize is cleared rather than evicting entries one by one.
+         */
+        protected static final class Mappings<V> {
+            private volatile ClassValue<ConcurrentMap<MappingKey, V>> classes = newClasses();
+
+            private static <V> ClassValue<ConcurrentMap<MappingKey, V>> newClasses() {
+                return new ClassValue<ConcurrentMap<MappingKey, V>>() {
+                    @Override
+                    protected ConcurrentMap<MappingKey, V> computeValue(Class<?> type) {
+                        return new ConcurrentHashMap<MappingKey, V>();
+                    }
+                };
+            }
+
+            public V get(MappingKey key) {
+                return classes.get(key.objectClass).get(key);
+            }
+
+            public void put(MappingKey key, V value) {
+                ConcurrentMap<MappingKey, V> map = classes.get(key.objectClass);
+                if (map.size() >= mappingCacheSize) map.clear();
+                map.put(key, value);
+            }
+
+            public void clear() {
+                classes = newClasses();
+            }
+        }
+    }
+
+    /**
+     * Map rows to objects with method handles compiled at init time for the
+     * columns of the result: primitive and String fields are read with the
+     * typed ResultSet getters where ClassFactory does, that is when the adapter
+     * casts the column values as they are, other fields are read with
+     * getObject and cast by the adapter. Fall back to the reflection of
+     * ClassFactory when the class members can't be accessed with method handles.
+     */
+    public static class CompiledClassFactory<T> extends ClassFactory<T> {
+        private static final Mappings<CompiledMapping> compiledMappings = new Mappings<CompiledMapping>();
+
+        private MethodHandle constructor;
+        private ColumnMapper[] mappers;
+
+        public CompiledClassFactory(Class<T> objectClass, Collection<String> fields) {
+            super(objectClass, fields);
+        }
+
+        public static void clearMappings() {
+            ClassFactory.clearMappings();
+            compiledMappings.clear();
+        }
+
+        @Override
+        public void init(JdbcAdapter adapter, ResultSet result) throws SQLException, JdbcResultException {
+            super.init(adapter, result);
+            ResultSetMetaData meta = result.getMetaData();
+            int[] types = new int[columns.size()];
+            for (int i = 0; i < types.length; i++) types[i] = meta.getColumnType(columns.get(i).index);
+
+            MappingKey key = mappingKey.withTypes(types);
+            CompiledMapping compiled = compiledMappings.get(key);
+            if (compiled == null) {
+                compiled = compile(types);
+                compiledMappings.put(key, compiled);
+            }
+            constructor = compiled.constructor;
+            if (compiled.mappers == null) {
+                mappers = null;
+                return;
+            }
+            mappers = new ColumnMapper[types.length];
+            for (int i = 0; i < mappers.length; i++) {
+                ColumnMapper typed = compiled.typedMappers[i];
+                mappers[i] = typed != null && typedColumns[i] != null ? typed : compiled.mappers[i];
+            }
+        }
+
+        private CompiledMapping compile(int[] types) {
+            try {
+                MethodHandle objectConstructor = MethodHandles.publicLookup()
+                        .findConstructor(objectClass, MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(Object.class));
+                ColumnMapper[] columnMappers = new ColumnMapper[types.length];
+                ColumnMapper[] typedMappers = new ColumnMapper[types.length];
+                for (int i = 0; i < columnMappers.length; i++) {
+                    ColumnInfo column = columns.get(i);
+                    MethodHandle setter = MethodHandles.publicLookup().unreflectSetter(column.field);
+                    columnMappers[i] = new ObjectMapper(column, setter);
+                    typedMappers[i] = ColumnMapper.typed(column, setter, types[i]);
+                }
+                return new CompiledMapping(objectConstructor, columnMappers, typedMappers);
+            } catch (NoSuchMethodException e) {
+                return new CompiledMapping(null, null, null);
+            } catch (IllegalAccessException e) {
+                return new CompiledMapping(null, null, null);
+            }
+        }
+
+        /**
+         * False if the factory falls back to reflection.
+         */
+        public boolean compiled() {
+            return mappers != null;
+        }
+
+        @Override
+        public T create(ResultSet result) throws SQLException, JdbcResultException {
+            if (mappers == null) return super.create(result);
+            ColumnMapper currentMapper = null;
+            try {
+                Object obj = (Object) constructor.invokeExact();
+                for (ColumnMapper mapper : mappers) {
+                    currentMapper = mapper;
+                    mapper.map(obj, result, adapter);
+                }
+                return objectClass.cast(obj);
+            } catch (SQLException e) {
+                throw e;
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                if (currentMapper == null) throw new JdbcResultException(e);
+                throw new JdbcResultException(currentMapper.column.field.getName() +"["+ currentMapper.column.index +"]", e);
+            }
+        }
+    }
+
+    /**
+     * The getObject mapper of each column, and its typed mapper or null, used
+     * when the adapter casts the column values as they are.
+     */
+    private static final class CompiledMapping {
+        public final MethodHandle constructor;
+        public final ColumnMapper[] mappers;
+        public final ColumnMapper[] typedMappers;
+
+        public CompiledMapping(MethodHandle constructor, ColumnMapper[] mappers, ColumnMapper[] typedMappers) {
+            this.constructor = constructor;
+            this.mappers = mappers;
+            this.typedMappers = typedMappers;
+        }
+    }
+
+    /**
+     * The type getObject returns for a column of the given SQL type when it
+     * can be read with a typed getter, null otherwise.
+     */
+    static Class<?> typedColumn(int sqlType) {
+        switch (sqlType) {
+        case Types.BOOLEAN:
+            return boolean.class;
+        case Types.INTEGER:
+            return int.class;
+        case Types.BIGINT:
+            return long.class;
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            return double.class;
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+        case Types.LONGNVARCHAR:
+            return String.class;
+        }
+        return null;
+    }
+
+    /**
+     * The type to read a column with a typed getter before storing it in the
+     * given type, null to use getObject and the adapter. Only the columns
+     * getObject returns as the given type, or its wrapper, are read with a
+     * typed getter, and only if the adapter casts them as they are.
+     */
+    static Class<?> typedColumn(JdbcAdapter adapter, ResultSetMetaData meta, int index, Class<?> type) throws SQLException {
+        Class<?> typed = typedColumn(meta.getColumnType(index));
+        if (typed == null || wrapper(typed) != wrapper(type)) return null;
+        if (!wrapper(typed).getName().equals(meta.getColumnClassName(index))) return null;
+        return adapter.castsAsIs(wrapper(typed), type) ? typed : null;
+    }
+
+    private static Class<?> wrapper(Class<?> type) {
+        if (type == boolean.class) return Boolean.class;
+        if (type == int.class) return Integer.class;
+        if (type == long.class) return Long.class;
+        if (type == double.class) return Double.class;
+        return type;
+    }
+
+    /**
+     * Read a column with the typed getter of typedColumn, null if the column
+     * is null.
+     */
+    static Object readTyped(ResultSet result, int index, Class<?> typed) throws SQLException {
+        if (typed == int.class) {
+            int value = result.getInt(index);
+            return value == 0 && result.wasNull() ? null : Integer.valueOf(value);
+        }
+        if (typed == long.class) {
+            long value = result.getLong(index);
+            return value == 0 && result.wasNull() ? null : Long.valueOf(value);
+        }
+        if (typed == double.class) {
+            double value = result.getDouble(index);
+            return value == 0 && result.wasNull() ? null : Double.valueOf(value);
+        }
+        if (typed == boolean.class) {
+            boolean value = result.getBoolean(index);
+            return !value && result.wasNull() ? null : Boolean.valueOf(value);
+        }
+        return result.getString(index);
+    }
+
+    /**
+     * Read a column with the typed getter of typedColumn or getObject, cast
+     * by the adapter unless read with a typed getter.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T read(JdbcAdapter adapter, ResultSet result, int index, Class<T> type, Class<?> typed) throws SQLException, JdbcAdapterException {
+        if (typed == null) return adapter.cast(type, result.getObject(index));
+        Object value = readTyped(result, index, typed);
+        return value != null ? (T) value : adapter.cast(type, null);
+    }
+
+    private static abstract class ColumnMapper {
+        public final ClassFactory.ColumnInfo column;
+        protected final MethodHandle setter;
+
+        public ColumnMapper(ClassFactory.ColumnInfo column, MethodHandle setter, Class<?> type) {
+            this.column = column;
+            this.setter = setter.asType(MethodType.methodType(void.class, Object.class, type));
+        }
+
+        /**
+         * The mapper reading the column with a typed getter, null if the
+         * field type doesn't match the column type.
+         */
+        public static ColumnMapper typed(ClassFactory.ColumnInfo column, MethodHandle setter, int sqlType) {
+            Class<?> type = column.field.getType();
+            if (typedColumn(sqlType) != type) return null;
+            if (type == boolean.class) return new BooleanMapper(column, setter);
+            if (type == int.class) return new IntMapper(column, setter);
+            if (type == long.class) return new LongMapper(column, setter);
+            if (type == double.class) return new DoubleMapper(column, setter);
+            return new StringMapper(column, setter);
+        }
+
+        public abstract void map(Object obj, ResultSet result, JdbcAdapter adapter) throws Throwable;
+
+        protected void mapNull(Object obj, JdbcAdapter adapter) throws Exception {
+            column.field.set(obj, adapter.cast(column.field.getType(), null));
+        }
+    }
+
+    private static class ObjectMapper extends ColumnMapper {
+        public ObjectMapper(ClassFactory.ColumnInfo column, MethodHandle setter) { super(column, setter, Object.class); }
+
+        @Override
+        public void map(Object obj, ResultSet result, JdbcAdapter adapter) throws Throwable {
+            Object value = adapter.cast(column.field.getType(), result.getObject(column.index));
+            if (value == null && column.field.getType().isPrimitive()) mapNull(obj, adapter);
+            else setter.invokeExact(obj, value);
+        }
+    }
+
+    private static class StringMapper extends ColumnMapper {
+        public StringMapper(ClassFactory.ColumnInfo column, MethodHandle setter) { super(column, setter, Object.class); }
+
+        @Override
+        public void map(Object obj, ResultSet result, JdbcAdapter adapter) throws Throwable {
+            String value = result.getString(column.index);
+            if (value == null) mapNull(obj, adapter);
+            else setter.invokeExact(obj, (Object) value);
+        }
+    }
+
+    private static class BooleanMapper extends ColumnMapper {
+        public BooleanMapper(ClassFactory.ColumnInfo column, MethodHandle setter) { super(column, setter, boolean.class); }
+
+        @Override
+        public void map(Object obj, ResultSet result, JdbcAdapter adapter) throws Throwable {
+            boolean value = result.getBoolean(column.index);
+            if (!value && result.wasNull()) mapNull(obj, adapter);
+            else setter.invokeExact(obj, value);
+        }
+    }
+
+    private static class IntMapper extends ColumnMapper {
+        public IntMapper(ClassFactory.ColumnInfo column, MethodHandle setter) { super(column, setter, int.class); }
+
+        @Override
+        public void map(Object obj, ResultSet result, JdbcAdapter adapter) throws Throwable {
+            int value = result.getInt(column.index);
+            if (value == 0 && result.wasNull()) mapNull(obj, adapter);
+            else setter.invokeExact(obj, value);
+        }
+    }
+
+    private static class LongMapper extends ColumnMapper {
+        public LongMapper(ClassFactory.ColumnInfo column, MethodHandle setter) { super(column, setter, long.class); }
+
+        @Override
+        public void map(Object obj, ResultSet result, JdbcAdapter adapter) throws Throwable {
+            long value = result.getLong(column.index);
+            if (value == 0 && result.wasNull()) mapNull(obj, adapter);
+            else setter.invokeExact(obj, value);
+        }
+    }
+
+    private static class DoubleMapper extends ColumnMapper {
+        public DoubleMapper(ClassFactory.ColumnInfo column, MethodHandle setter) { super(column, setter, double.class); }
+
+        @Override
+        public void map(Object obj, ResultSet result, JdbcAdapter adapter) throws Throwable {
+            double value = result.getDouble(column.index);
+            if (value == 0 && result.wasNull()) mapNull(obj, adapter);
+            else setter.invokeExact(obj, value);
+        }
     }
 
     public static class MapFactory implements Factory<Map<String, Object>> {
@@ -271,7 +725,12 @@ public class JdbcResult {
             int count = meta.getColumnCount();
             for (int i = 1; i <= count; i++) {
                 String label = meta.getColumnLabel(i);
-                if (label.length() != 0) columns.add(new ColumnInfo(i, label.toLowerCase()));
+                if (label.length() != 0) {
+                    Class<?> typed = typedColumn(meta.getColumnType(i));
+                    if (typed != null && (!wrapper(typed).getName().equals(meta.getColumnClassName(i))
+                            || !adapter.decodesAsIs(wrapper(typed)))) typed = null;
+                    columns.add(new ColumnInfo(i, label.toLowerCase(), typed));
+                }
             }
         }
 
@@ -279,8 +738,8 @@ public class JdbcResult {
             Map<String, Object> map = new FieldHashMap();
             try {
                 for (ColumnInfo column : columns) {
-                    Object value = result.getObject(column.index);
-                    map.put(column.name, adapter.decodeSqlValue(value));
+                    Object value = column.typed == null ? result.getObject(column.index) : readTyped(result, column.index, column.typed);
+                    map.put(column.name, value != null && column.typed != null ? value : adapter.decodeSqlValue(value));
                 }
             } catch (SQLException e) {
                 throw e;
@@ -300,10 +759,12 @@ public class JdbcResult {
         private static class ColumnInfo {
             public final int index;
             public final String name;
+            public final Class<?> typed;
 
-            public ColumnInfo(int index, String name) {
+            public ColumnInfo(int index, String name, Class<?> typed) {
                 this.index = index;
                 this.name = name;
+                this.typed = typed;
             }
         }
     }
@@ -353,25 +814,41 @@ public class JdbcResult {
             }
         }
 
+        /**
+         * The typedColumn of each column for the given element type.
+         */
+        protected Class<?>[] typedColumns(Class<?> type, ResultSet result) throws SQLException {
+            ResultSetMetaData meta = result.getMetaData();
+            Class<?>[] typed = new Class<?>[columns.size()];
+            for (int i = 0; i < typed.length; i++) typed[i] = typedColumn(adapter, meta, columns.get(i), type);
+            return typed;
+        }
+
         public abstract T create(ResultSet result) throws SQLException, JdbcResultException;
     }
 
     public static class ListFactory<T> extends CollectionFactory<List<T>> {
         private final Class<T> objectClass;
+        private Class<?>[] typed;
 
         public ListFactory(Class<T> objectClass, Collection<String> fields) {
             super(fields);
             this.objectClass = objectClass;
         }
 
+        @Override
+        public void init(JdbcAdapter adapter, ResultSet result) throws SQLException, JdbcResultException {
+            super.init(adapter, result);
+            typed = typedColumns(objectClass, result);
+        }
+
         @Override
         public List<T> create(ResultSet result) throws SQLException, JdbcResultException {
             List<T> list = new ArrayList<T>(columns.size());
             int i = 0;
             try {
                 for (Integer column : columns) {
-                    Object value = result.getObject(column);
-                    list.add(adapter.cast(objectClass, value));
+                    list.add(read(adapter, result, column, objectClass, typed[i]));
                     i++;
                 }
             } catch (SQLException e) {
@@ -385,12 +862,19 @@ public class JdbcResult {
 
     public static class ArrayFactory<T> extends CollectionFactory<T[]> {
         private final Class<T> objectClass;
+        private Class<?>[] typed;
 
         public ArrayFactory(Class<T> objectClass, Collection<String> fields) {
             super(fields);
             this.objectClass = objectClass;
         }
 
+        @Override
+        public void init(JdbcAdapter adapter, ResultSet result) throws SQLException, JdbcResultException {
+            super.init(adapter, result);
+            typed = typedColumns(objectClass, result);
+        }
+
         @Override
         @SuppressWarnings("unchecked")
         public T[] create(ResultSet result) throws SQLException, JdbcResultException {
@@ -398,8 +882,7 @@ public class JdbcResult {
             int i = 0;
             try {
                 for (Integer column : columns) {
-                    Object value = result.getObject(column);
-                    array[i] = adapter.cast(objectClass, value);
+                    array[i] = read(adapter, result, column, objectClass, typed[i]);
                     i++;
                 }
             } catch (SQLException e) {
@@ -0,0 +1,139 @@
+package fr.zenexity.dbhelper;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded queue of the rows read by background threads for one consumer.
+ * Each reader puts its rows then end() or fail(), the consumer takes them
+ * until the end, and cancel() stops the readers at their next row.
+ * With a timeout, a reader waiting that long for room cancels the queue,
+ * the consumer being gone.
+ */
+final class JdbcRowQueue {
+
+    /**
+     * Returned by take() at the end of the rows of a reader.
+     */
+    public static final Object END = new Object();
+    private static final Object NULL = new Object();
+
+    private static final class Failure {
+        public final Throwable cause;
+
+        public Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+
+    private final BlockingQueue<Object> queue;
+    private final long timeout;
+    private volatile boolean cancelled;
+
+    public JdbcRowQueue(int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * Cancel the queue when a reader waits more than timeout milliseconds
+     * for room, 0 to wait forever.
+     */
+    public JdbcRowQueue(int capacity, long timeout) {
+        if (timeout < 0) throw new IllegalArgumentException("timeout: "+ timeout);
+        this.queue = new ArrayBlockingQueue<Object>(capacity);
+        this.timeout = timeout;
+        this.cancelled = false;
+    }
+
+    public boolean cancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Stop the readers and drop the rows not taken yet.
+     */
+    public void cancel() {
+        cancelled = true;
+        queue.clear();
+    }
+
+    /**
+     * Put the rows until their end or the cancellation of the queue, then
+     * close the iterator.
+     */
+    public void read(JdbcIterator<?> rows) throws JdbcException {
+        boolean done = false;
+        try {
+            while (!cancelled && rows.hasNext()) {
+                if (!put(rows.next())) break;
+            }
+            done = true;
+        } finally {
+            if (done) {
+                rows.close();
+            } else try {
+                rows.close();
+            } catch (JdbcException e) {
+                // keep the read error
+            }
+        }
+    }
+
+    public void end() {
+        offer(END);
+    }
+
+    public void fail(Throwable error) {
+        offer(new Failure(error));
+    }
+
+    /**
+     * Wait for room in the queue, false if cancelled or timed out.
+     */
+    public boolean put(Object row) {
+        return offer(row == null ? NULL : row);
+    }
+
+    private boolean offer(Object item) {
+        try {
+            if (cancelled) return false;
+            long deadline = timeout == 0 ? 0 : System.currentTimeMillis() + timeout;
+            while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                if (cancelled) return false;
+                if (deadline != 0 && System.currentTimeMillis() >= deadline) {
+                    cancel();
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * The next row, END at the end of the rows of a reader, or the error of
+     * a failed reader. Fails once the queue is cancelled.
+     */
+    public Object take() throws JdbcIteratorException {
+        Object item;
+        try {
+            while ((item = queue.poll(100, TimeUnit.MILLISECONDS)) == null) {
+                if (cancelled) throw new JdbcIteratorException(timeout == 0 ? "Reading cancelled" : "No row taken for "+ timeout +" ms, reading cancelled");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JdbcIteratorException(e);
+        }
+        if (item == NULL) return null;
+        if (item instanceof Failure) {
+            Throwable cause = ((Failure) item).cause;
+            if (cause instanceof JdbcIteratorException) throw (JdbcIteratorException) cause;
+            throw new JdbcIteratorException(cause);
+        }
+        return item;
+    }
+
+}
@@ -11,6 +11,22 @@ public class JdbcStatement {
 
     public static final int defaultResultSetType = ResultSet.TYPE_SCROLL_INSENSITIVE;
     public static final int defaultResultSetConcurrency = ResultSet.CONCUR_READ_ONLY;
+    public static final int defaultStreamFetchSize = 1000;
+
+    /**
+     * Fetch size making the driver stream the rows of a forward only result:
+     * MySQL only streams with Integer.MIN_VALUE, other drivers use the given
+     * fetch size. PostgreSQL ignores it while the connection is in
+     * auto-commit mode.
+     */
+    public static int streamFetchSize(Connection cnx, int fetchSize) throws JdbcStatementException {
+        try {
+            if ("MySQL".equalsIgnoreCase(cnx.getMetaData().getDatabaseProductName())) return Integer.MIN_VALUE;
+        } catch (SQLException e) {
+            throw new JdbcStatementException(e);
+        }
+        return fetchSize;
+    }
 
     public static int executeUpdate(Connection cnx, JdbcAdapter adapter, String query, Object... params) throws JdbcStatementException {
         JdbcStatement qs = prepareUpdate(cnx, adapter, query).params(params);
@@ -114,6 +130,7 @@ public class JdbcStatement {
     public final PreparedStatement statement;
     public final JdbcAdapter adapter;
     private int index;
+    private int fetchSize;
 
     public JdbcStatement(PreparedStatement statement, JdbcAdapter adapter) {
         this(statement, 0, adapter);
@@ -136,8 +153,7 @@ public class JdbcStatement {
 
     public JdbcStatement params(Object... params) throws JdbcStatementException {
         try {
-            for (Object param : params)
-                statement.setObject(++index, adapter.encodeSqlValue(param));
+            for (Object param : params) set(param);
         } catch (SQLException e) {
             throw new JdbcStatementException(e);
         }
@@ -146,14 +162,50 @@ public class JdbcStatement {
 
     public JdbcStatement paramsList(Iterable<Object> params) throws JdbcStatementException {
         try {
-            for (Object param : params)
-                statement.setObject(++index, adapter.encodeSqlValue(param));
+            for (Object param : params) set(param);
+        } catch (SQLException e) {
+            throw new JdbcStatementException(e);
+        }
+        return this;
+    }
+
+    private void set(Object param) throws SQLException, JdbcException {
+        if (param instanceof Sql.ArrayParam) {
+            Sql.ArrayParam array = (Sql.ArrayParam) param;
+            Object[] values = array.values();
+            for (int i = 0; i < values.length; i++) values[i] = adapter.encodeSqlValue(values[i]);
+            statement.setArray(++index, statement.getConnection().createArrayOf(array.type, values));
+        } else {
+            statement.setObject(++index, adapter.encodeSqlValue(checkBound(param)));
+        }
+    }
+
+    private static Object checkBound(Object param) throws JdbcStatementException {
+        if (param instanceof Sql.Param) throw new JdbcStatementException(new IllegalArgumentException("Unbound parameter: "+ ((Sql.Param) param).name));
+        return param;
+    }
+
+    /**
+     * Number of rows fetched from the database at once, 0 for the driver default.
+     */
+    public JdbcStatement fetchSize(int rows) throws JdbcStatementException {
+        try {
+            statement.setFetchSize(rows);
         } catch (SQLException e) {
             throw new JdbcStatementException(e);
         }
+        fetchSize = rows;
         return this;
     }
 
+    /**
+     * Fetch size given to fetchSize(int), 0 if not set: some drivers, like
+     * HSQLDB, don't report it back through getFetchSize().
+     */
+    public int fetchSize() {
+        return fetchSize;
+    }
+
     public ResultSet executeQuery() throws JdbcStatementException {
         try {
             return statement.executeQuery();
@@ -208,6 +260,36 @@ public class JdbcStatement {
         return executeUpdate();
     }
 
+    public JdbcStatement addBatch() throws JdbcStatementException {
+        try {
+            statement.addBatch();
+        } catch (SQLException e) {
+            throw new JdbcStatementException(e);
+        }
+        index = 0;
+        return this;
+    }
+
+    public JdbcStatement addBatch(Object... params) throws JdbcStatementException {
+        index = 0;
+        params(params);
+        return addBatch();
+    }
+
+    public JdbcStatement addBatchList(Iterable<Object> params) throws JdbcStatementException {
+        index = 0;
+        paramsList(params);
+        return addBatch();
+    }
+
+    public int[] executeBatch() throws JdbcStatementException {
+        try {
+            return statement.executeBatch();
+        } catch (SQLException e) {
+            throw new JdbcStatementException(e);
+        }
+    }
+
     public ResultSet getGeneratedKeys() throws JdbcStatementException {
         try {
             return statement.getGeneratedKeys();
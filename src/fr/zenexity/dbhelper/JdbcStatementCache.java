@@ -0,0 +1,224 @@
+package fr.zenexity.dbhelper;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache of prepared statements for one connection.
+ * Statements are keyed by SQL text, result set type and concurrency, and
+ * generated keys mode. A statement handed out by the cache is removed from it
+ * until closed: closing the handle clears its parameters and puts it back,
+ * the underlying statement is only closed when evicted. Only the handle
+ * knows whether it was closed, the driver is not asked.
+ */
+public class JdbcStatementCache {
+
+    public final Connection connection;
+    private final int capacity;
+    private final Map<Key, PreparedStatement> statements;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public JdbcStatementCache(Connection connection, int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity: "+ capacity);
+        this.connection = connection;
+        this.capacity = capacity;
+        this.statements = new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return statements.size();
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public PreparedStatement prepareQuery(String sql, int resultSetType, int resultSetConcurrency) throws JdbcStatementException {
+        return prepare(new Key(sql, resultSetType, resultSetConcurrency, Statement.NO_GENERATED_KEYS));
+    }
+
+    public PreparedStatement prepareUpdate(String sql) throws JdbcStatementException {
+        return prepareUpdate(sql, false);
+    }
+
+    public PreparedStatement prepareUpdate(String sql, boolean returnGeneratedKeys) throws JdbcStatementException {
+        return prepare(new Key(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY,
+                returnGeneratedKeys ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS));
+    }
+
+    private PreparedStatement prepare(Key key) throws JdbcStatementException {
+        PreparedStatement statement;
+        synchronized (this) {
+            statement = statements.remove(key);
+            if (statement != null) hits++;
+            else misses++;
+        }
+        try {
+            if (statement == null) {
+                statement = key.autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS
+                        ? connection.prepareStatement(key.sql, key.autoGeneratedKeys)
+                        : connection.prepareStatement(key.sql, key.resultSetType, key.resultSetConcurrency);
+            }
+        } catch (SQLException e) {
+            throw new JdbcStatementException(e);
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                new Handle(key, statement));
+    }
+
+    private void release(Key key, PreparedStatement statement) throws SQLException {
+        try {
+            statement.clearParameters();
+            statement.clearBatch();
+            statement.clearWarnings();
+        } catch (SQLException e) {
+            statement.close();
+            throw e;
+        }
+
+        List<PreparedStatement> evicted = new ArrayList<PreparedStatement>(1);
+        synchronized (this) {
+            if (statements.containsKey(key)) {
+                evicted.add(statement);
+            } else {
+                statements.put(key, statement);
+                Iterator<PreparedStatement> it = statements.values().iterator();
+                while (statements.size() > capacity) {
+                    evicted.add(it.next());
+                    it.remove();
+                }
+            }
+            evictions += evicted.size();
+        }
+        close(evicted);
+    }
+
+    public void clear() throws JdbcStatementException {
+        List<PreparedStatement> evicted;
+        synchronized (this) {
+            evicted = new ArrayList<PreparedStatement>(statements.values());
+            statements.clear();
+        }
+        try {
+            close(evicted);
+        } catch (SQLException e) {
+            throw new JdbcStatementException(e);
+        }
+    }
+
+    public void close() throws JdbcStatementException {
+        clear();
+    }
+
+    private static void close(List<PreparedStatement> statements) throws SQLException {
+        SQLException error = null;
+        for (PreparedStatement statement : statements) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                if (error == null) error = e;
+            }
+        }
+        if (error != null) throw error;
+    }
+
+    private class Handle implements InvocationHandler {
+        private final Key key;
+        private final PreparedStatement statement;
+        private boolean closed;
+
+        public Handle(Key key, PreparedStatement statement) {
+            this.key = key;
+            this.statement = statement;
+            this.closed = false;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close") && method.getParameterTypes().length == 0) {
+                if (!closed) {
+                    closed = true;
+                    release(key, statement);
+                }
+                return null;
+            }
+            if (name.equals("isClosed") && method.getParameterTypes().length == 0) {
+                // Statement.isClosed() is missing from JDBC 3 drivers
+                return closed;
+            }
+            if (method.getDeclaringClass() == Object.class) {
+                if (name.equals("equals")) return proxy == args[0];
+                if (name.equals("hashCode")) return System.identityHashCode(proxy);
+                return "Cached " + statement;
+            }
+            if (closed) throw new SQLException("Statement closed");
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static final class Key {
+        public final String sql;
+        public final int resultSetType;
+        public final int resultSetConcurrency;
+        public final int autoGeneratedKeys;
+        private final int hash;
+
+        public Key(String sql, int resultSetType, int resultSetConcurrency, int autoGeneratedKeys) {
+            this.sql = sql;
+            this.resultSetType = resultSetType;
+            this.resultSetConcurrency = resultSetConcurrency;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+            this.hash = ((sql.hashCode() * 31 + resultSetType) * 31 + resultSetConcurrency) * 31 + autoGeneratedKeys;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key key = (Key) obj;
+            return hash == key.hash
+                && resultSetType == key.resultSetType
+                && resultSetConcurrency == key.resultSetConcurrency
+                && autoGeneratedKeys == key.autoGeneratedKeys
+                && sql.equals(key.sql);
+        }
+    }
+
+}
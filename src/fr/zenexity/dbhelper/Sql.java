@@ -1,5 +1,6 @@
 package fr.zenexity.dbhelper;
 
+import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
@@ -7,9 +8,12 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -19,10 +23,14 @@ public abstract class Sql {
     private Sql() {
     }
 
+    /**
+     * Separated list of SQL fragments collected in a StringBuilder,
+     * rendered with a prefix and a suffix when not empty.
+     */
     public static class Concat {
         private String prefix, localPrefix, separator, suffix;
         private String defaultValue;
-        private String value;
+        private final StringBuilder value;
 
         public Concat(String prefix, String separator, String suffix) {
             this.prefix = prefix;
@@ -30,7 +38,7 @@ public abstract class Sql {
             this.separator = separator;
             this.suffix = suffix;
             this.defaultValue = "";
-            this.value = "";
+            this.value = new StringBuilder();
         }
 
         public Concat(String prefix, String separator) {
@@ -43,7 +51,7 @@ public abstract class Sql {
             this.separator = src.separator;
             this.suffix = src.suffix;
             this.defaultValue = src.defaultValue;
-            this.value = src.value;
+            this.value = new StringBuilder(src.value);
         }
 
         public Concat defaultValue(String defaultValue) {
@@ -72,6 +80,12 @@ public abstract class Sql {
         }
 
         public Concat append(Object obj) {
+            if (obj instanceof Concat && !((Concat) obj).isEmpty()) {
+                separate();
+                ((Concat) obj).appendTo(value);
+                return this;
+            }
+
             final String text;
             if (obj != null) {
                 String objStr = obj.toString();
@@ -80,18 +94,22 @@ public abstract class Sql {
             } else text = defaultValue;
 
             if (text != null) {
-                if (value.length() > 0) {
-                    if (separator == null) throw new NullPointerException();
-                    value += separator;
-                } else if (localPrefix != null) {
-                    value += localPrefix;
-                    localPrefix = null;
-                }
-                value += text;
+                separate();
+                value.append(text);
             }
             return this;
         }
 
+        private void separate() {
+            if (value.length() > 0) {
+                if (separator == null) throw new NullPointerException();
+                value.append(separator);
+            } else if (localPrefix != null) {
+                value.append(localPrefix);
+                localPrefix = null;
+            }
+        }
+
         public Concat add(Object... objs) {
             for (Object obj : objs) append(obj);
             return this;
@@ -101,14 +119,37 @@ public abstract class Sql {
             return value.length()<=0;
         }
 
+        /**
+         * Length of the rendered text.
+         */
+        public int length() {
+            if (isEmpty()) return 0;
+            if (prefix == null || suffix == null) throw new NullPointerException();
+            return prefix.length() + value.length() + suffix.length();
+        }
+
+        public StringBuilder appendTo(StringBuilder sql) {
+            if (isEmpty()) return sql;
+            if (prefix == null || suffix == null) throw new NullPointerException();
+            return sql.append(prefix).append(value).append(suffix);
+        }
+
         @Override
         public String toString() {
             if (isEmpty()) return "";
-            if (prefix == null || suffix == null) throw new NullPointerException();
-            return prefix + value + suffix;
+            return appendTo(new StringBuilder(length())).toString();
         }
     }
 
+    /**
+     * Append a space separated clause to a query being rendered.
+     */
+    private static StringBuilder render(StringBuilder sql, Concat clause) {
+        if (clause.isEmpty()) return sql;
+        if (sql.length() > 0) sql.append(' ');
+        return clause.appendTo(sql);
+    }
+
     public static class ConcatWithParams extends Concat {
         public final List<Object> params;
 
@@ -179,7 +220,7 @@ public abstract class Sql {
 
         private void subWhere(String sep, Where where) {
             query.paramsList(where.query.params).separator(sep);
-            if (!where.query.isEmpty()) query.append("(" + where.toString() + ")");
+            if (!where.query.isEmpty()) query.append(new Concat("(", null, ")").append(where.query));
         }
 
         public Where and(String expr, Object... params) { append(" AND ", expr, params); return this; }
@@ -206,6 +247,90 @@ public abstract class Sql {
             return keyWhere;
         }
 
+        /**
+         * Keyset pagination: rows following the given non null values of the
+         * ORDER BY columns, as an expanded OR of the column prefixes:
+         * (a > ?) OR (a = ? AND b > ?) ...
+         * A column suffixed with " DESC" is compared with "<".
+         */
+        public static Where after(List<String> orderBy, List<?> values) {
+            if (orderBy.isEmpty() || orderBy.size() != values.size())
+                throw new IllegalArgumentException(orderBy.size() +" columns for "+ values.size() +" values");
+            Where keyset = new Where();
+            for (int i = 0; i < orderBy.size(); i++) {
+                Where prefix = new Where();
+                for (int j = 0; j < i; j++) prefix.and(orderColumn(orderBy.get(j)) +"=?", values.get(j));
+                String column = orderBy.get(i);
+                prefix.and(orderColumn(column) + (descending(column) ? "<?" : ">?"), values.get(i));
+                keyset.or(prefix);
+            }
+            return keyset;
+        }
+
+        public static Where after(String[] orderBy, Object... values) {
+            return after(Arrays.asList(orderBy), Arrays.asList(values));
+        }
+
+        public static final int maxInBucket = 256;
+
+        /**
+         * column IN (?, ...) with the number of placeholders rounded up to a
+         * power of two by repeating the last value, so lists of different
+         * sizes share a few statements. Lists of more than maxInBucket values
+         * are split into IN lists of maxInBucket placeholders joined by OR,
+         * keeping under the IN list size limit of databases like Oracle.
+         * An empty list matches nothing.
+         */
+        public static Where in(String column, Iterable<?> values) {
+            List<Object> params = new ArrayList<Object>();
+            for (Object value : values) params.add(value);
+            if (params.isEmpty()) return new Where().and("1=0");
+            Where chunks = new Where();
+            for (int from = 0; from < params.size(); from += maxInBucket) {
+                orIn(chunks, column, params.subList(from, Math.min(params.size(), from + maxInBucket)));
+            }
+            return params.size() <= maxInBucket ? chunks : new Where().and(chunks);
+        }
+
+        private static void orIn(Where where, String column, List<Object> values) {
+            int bucket = Integer.highestOneBit(values.size());
+            if (bucket < values.size()) bucket <<= 1;
+            Object[] params = values.toArray(new Object[bucket]);
+            Arrays.fill(params, values.size(), bucket, values.get(values.size() - 1));
+            Concat placeholders = new Concat(column +" IN (", ", ", ")");
+            for (int i = 0; i < bucket; i++) placeholders.append("?");
+            where.or(placeholders.toString(), params);
+        }
+
+        public static Where in(String column, Object... values) {
+            return in(column, Arrays.asList(values));
+        }
+
+        /**
+         * column = ANY(?) with the values bound as one SQL array of the given
+         * element type, like "integer" or "varchar", for databases comparing
+         * with an array parameter like PostgreSQL.
+         */
+        public static Where any(String column, String type, Collection<?> values) {
+            return new Where().and(column +" = ANY(?)", new ArrayParam(type, values.toArray()));
+        }
+
+        public static Where any(String column, String type, Object... values) {
+            return new Where().and(column +" = ANY(?)", new ArrayParam(type, values));
+        }
+
+        static boolean descending(String orderColumn) {
+            return orderColumn.trim().toUpperCase().endsWith(" DESC");
+        }
+
+        static String orderColumn(String orderColumn) {
+            String column = orderColumn.trim();
+            String upper = column.toUpperCase();
+            if (upper.endsWith(" DESC")) return column.substring(0, column.length() - 5).trim();
+            if (upper.endsWith(" ASC")) return column.substring(0, column.length() - 4).trim();
+            return column;
+        }
+
         @Override
         public String toString() {
             return query.toString();
@@ -329,6 +454,339 @@ public abstract class Sql {
         }
     }
 
+    /**
+     * SQL rendered once and a fixed number of parameters, new parameter values
+     * are bound on a copy without rendering again.
+     */
+    static abstract class CompiledStatement<Q extends CompiledStatement<Q>> {
+        public final String query;
+        private final List<Object> params;
+        private final Map<String, int[]> names;
+
+        CompiledStatement(String query, List<Object> params) {
+            this.query = query;
+            Object[] values = params.toArray();
+            this.params = Collections.unmodifiableList(Arrays.asList(values));
+            this.names = paramNames(values);
+        }
+
+        CompiledStatement(CompiledStatement<Q> src, Object[] params) {
+            this.query = src.query;
+            this.params = Collections.unmodifiableList(Arrays.asList(params));
+            this.names = src.names;
+        }
+
+        /**
+         * Same query with the given parameters, owned by the copy.
+         */
+        abstract Q copy(Object[] params);
+
+        /**
+         * Names of the Sql.param slots.
+         */
+        public Set<String> names() {
+            return names.keySet();
+        }
+
+        /**
+         * Number of parameters to bind.
+         */
+        public int slots() {
+            return params.size();
+        }
+
+        /**
+         * Same query with new values for all the parameters.
+         */
+        public Q bind(Object... params) {
+            checkSlots(this.params.size(), params.length);
+            return copy(params.clone());
+        }
+
+        /**
+         * Same query with the values of all the named slots.
+         */
+        public Q bind(Map<String, ?> values) {
+            return copy(bindNames(names, params.toArray(), values));
+        }
+
+        /**
+         * Same query with a new value for one parameter.
+         */
+        public Q set(int slot, Object param) {
+            Object[] values = params.toArray();
+            values[slot] = param;
+            return copy(values);
+        }
+
+        @Override
+        public String toString() {
+            return query;
+        }
+
+        public Iterable<Object> params() {
+            return params;
+        }
+
+        public List<Object> copyParams() {
+            return new ArrayList<Object>(params);
+        }
+    }
+
+    /**
+     * Immutable query with its SQL rendered once and a fixed number of
+     * parameters, new parameter values are bound without rendering again.
+     */
+    public static final class CompiledQuery extends CompiledStatement<CompiledQuery> implements Query {
+        public CompiledQuery(Query src) {
+            super(src.toString(), src.copyParams());
+        }
+
+        private CompiledQuery(CompiledQuery src, Object[] params) {
+            super(src, params);
+        }
+
+        @Override
+        CompiledQuery copy(Object[] params) {
+            return new CompiledQuery(this, params);
+        }
+    }
+
+    /**
+     * Immutable update query with its SQL rendered once and a fixed number
+     * of parameters, new parameter values are bound without rendering again.
+     */
+    public static final class CompiledUpdateQuery extends CompiledStatement<CompiledUpdateQuery> implements UpdateQuery {
+        public CompiledUpdateQuery(UpdateQuery src) {
+            super(src.toString(), src.copyParams());
+        }
+
+        private CompiledUpdateQuery(CompiledUpdateQuery src, Object[] params) {
+            super(src, params);
+        }
+
+        @Override
+        CompiledUpdateQuery copy(Object[] params) {
+            return new CompiledUpdateQuery(this, params);
+        }
+    }
+
+    private static void checkSlots(int slots, int count) {
+        if (count != slots) throw new IllegalArgumentException(count +" parameters for "+ slots +" slots");
+    }
+
+    private static Map<String, int[]> paramNames(Object[] params) {
+        Map<String, int[]> names = new LinkedHashMap<String, int[]>();
+        for (int i = 0; i < params.length; i++) {
+            if (params[i] instanceof Param) {
+                String name = ((Param) params[i]).name;
+                int[] slots = names.get(name);
+                if (slots == null) slots = new int[0];
+                slots = Arrays.copyOf(slots, slots.length + 1);
+                slots[slots.length - 1] = i;
+                names.put(name, slots);
+            }
+        }
+        return Collections.unmodifiableMap(names);
+    }
+
+    private static Object[] bindNames(Map<String, int[]> names, Object[] params, Map<String, ?> values) {
+        for (String name : values.keySet()) {
+            if (!names.containsKey(name)) throw new IllegalArgumentException("Unknown parameter: "+ name);
+        }
+        for (Map.Entry<String, int[]> name : names.entrySet()) {
+            if (!values.containsKey(name.getKey())) throw new IllegalArgumentException("Unbound parameter: "+ name.getKey());
+            Object value = values.get(name.getKey());
+            for (int slot : name.getValue()) params[slot] = value;
+        }
+        return params;
+    }
+
+    /**
+     * Named parameter slot of a query template, bound by name on its
+     * compiled query.
+     */
+    public static final class Param implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public final String name;
+
+        public Param(String name) {
+            if (name == null) throw new NullPointerException();
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Param && name.equals(((Param) obj).name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return ":"+ name;
+        }
+    }
+
+    /**
+     * Parameter bound as an SQL array created by the connection, the type
+     * being the database name of the element type.
+     */
+    public static final class ArrayParam {
+        public final String type;
+        private final Object[] values;
+
+        public ArrayParam(String type, Object[] values) {
+            if (type == null || values == null) throw new NullPointerException();
+            this.type = type;
+            this.values = values.clone();
+        }
+
+        public Object[] values() {
+            return values.clone();
+        }
+
+        @Override
+        public String toString() {
+            return type +"[] "+ Arrays.toString(values);
+        }
+    }
+
+    /**
+     * SQL syntax used to page a query in the database.
+     */
+    public enum Dialect {
+        /** LIMIT size OFFSET start: MySQL, PostgreSQL, H2, HSQLDB, SQLite */
+        LIMIT_OFFSET,
+        /** OFFSET start ROWS FETCH FIRST size ROWS ONLY (SQL:2008): Oracle 12c, SQL Server 2012 (with ORDER BY), DB2, Derby */
+        OFFSET_FETCH;
+
+        public static Dialect of(String databaseProductName) {
+            String name = databaseProductName == null ? "" : databaseProductName.toLowerCase();
+            if (name.contains("oracle") || name.contains("sql server") || name.contains("db2") || name.contains("derby"))
+                return OFFSET_FETCH;
+            return LIMIT_OFFSET;
+        }
+
+        /**
+         * The query restricted to size rows starting at the given offset,
+         * bound as parameters. The query must not already have a limit or an offset.
+         */
+        public FinalQuery page(Query query, long offset, long size) {
+            if (offset < 0) throw new IllegalArgumentException("offset: "+ offset);
+            if (size < 0) throw new IllegalArgumentException("size: "+ size);
+            if (query instanceof Select && !(((Select) query).offset.isEmpty() && ((Select) query).limit.isEmpty())
+                    || query instanceof Union && !(((Union) query).offset.isEmpty() && ((Union) query).limit.isEmpty()))
+                throw new IllegalArgumentException("Query already paged: "+ query);
+            final FinalQuery paged;
+            if (this == LIMIT_OFFSET) {
+                paged = new FinalQuery(query + " LIMIT ? OFFSET ?");
+                paged.params.addAll(query.copyParams());
+                paged.params.add(size);
+                paged.params.add(offset);
+            } else {
+                paged = new FinalQuery(query + " OFFSET ? ROWS FETCH FIRST ? ROWS ONLY");
+                paged.params.addAll(query.copyParams());
+                paged.params.add(offset);
+                paged.params.add(size);
+            }
+            return paged;
+        }
+    }
+
+    /**
+     * Keyset pagination of a select: a page is made of the size rows
+     * following the ORDER BY values of the last row of the previous page, so
+     * deep pages are reached with index seeks instead of scanning the
+     * skipped rows. The ORDER BY columns must identify the rows, must not be
+     * null and must be selected, with their name (without table prefix) as
+     * label.
+     */
+    public static final class Keyset {
+        private final Select select;
+        private final List<String> orderBy;
+        public final int size;
+
+        public Keyset(Select select, int size, String... orderBy) {
+            if (size <= 0) throw new IllegalArgumentException("size: "+ size);
+            if (orderBy.length == 0) throw new IllegalArgumentException("No ORDER BY columns");
+            if (!(select.orderBy.isEmpty() && select.offset.isEmpty() && select.limit.isEmpty()))
+                throw new IllegalArgumentException("Query already ordered or paged: "+ select);
+            this.select = new Select(select);
+            this.size = size;
+            this.orderBy = Collections.unmodifiableList(new ArrayList<String>(Arrays.asList(orderBy)));
+        }
+
+        public List<String> orderBy() {
+            return orderBy;
+        }
+
+        /**
+         * Result labels of the ORDER BY columns.
+         */
+        public List<String> labels() {
+            List<String> labels = new ArrayList<String>(orderBy.size());
+            for (String column : orderBy) {
+                String name = Where.orderColumn(column);
+                labels.add(name.substring(name.lastIndexOf('.') + 1));
+            }
+            return labels;
+        }
+
+        /**
+         * The ordered, unlimited query of the rows following the token,
+         * all the rows for a null token.
+         */
+        public Select page(Token after) {
+            Select page = new Select(select);
+            if (after != null) page.andWhere(Where.after(orderBy, after.values));
+            return page.orderBy(orderBy.toArray());
+        }
+
+        /**
+         * The size rows following the token, paged with the SQL dialect.
+         */
+        public FinalQuery page(Token after, Dialect dialect) {
+            return dialect.page(page(after), 0, size);
+        }
+
+        /**
+         * Position of a keyset cursor: the ORDER BY values of the last row read.
+         */
+        public static final class Token implements Serializable {
+            private static final long serialVersionUID = 1L;
+
+            public final List<Object> values;
+
+            public Token(List<?> values) {
+                this.values = Collections.unmodifiableList(new ArrayList<Object>(values));
+            }
+
+            public Token(Object... values) {
+                this(Arrays.asList(values));
+            }
+
+            @Override
+            public int hashCode() {
+                return values.hashCode();
+            }
+
+            @Override
+            public boolean equals(Object obj) {
+                return obj instanceof Token && values.equals(((Token) obj).values);
+            }
+
+            @Override
+            public String toString() {
+                return "Token"+ values;
+            }
+        }
+    }
+
     public enum JoinType {
         JOIN("JOIN"),
         INNER("INNER JOIN"),
@@ -460,17 +918,26 @@ public abstract class Sql {
         @Override
         public String toString() {
             if (select.isEmpty() && from.isEmpty()) where.query.prefix("");
-            return new Concat(""," ").defaultValue(null)
-                    .append(with)
-                    .append(select)
-                    .append(from)
-                    .append(where)
-                    .append(groupBy)
-                    .append(having)
-                    .append(orderBy)
-                    .append(offset)
-                    .append(limit)
-                    .toString();
+            StringBuilder sql = new StringBuilder(with.length() + select.length() + from.length()
+                    + where.query.length() + groupBy.length() + having.query.length()
+                    + orderBy.length() + offset.length() + limit.length() + 8);
+            render(sql, with);
+            render(sql, select);
+            render(sql, from);
+            render(sql, where.query);
+            render(sql, groupBy);
+            render(sql, having.query);
+            render(sql, orderBy);
+            render(sql, offset);
+            render(sql, limit);
+            return sql.toString();
+        }
+
+        /**
+         * Immutable copy of the query rendered once.
+         */
+        public CompiledQuery compile() {
+            return new CompiledQuery(this);
         }
 
         public Iterable<Object> params() {
@@ -532,12 +999,19 @@ public abstract class Sql {
 
         @Override
         public String toString() {
-            return new Concat("", " ").defaultValue(null)
-                    .append(union)
-                    .append(orderBy)
-                    .append(offset)
-                    .append(limit)
-                    .toString();
+            StringBuilder sql = new StringBuilder(union.length() + orderBy.length() + offset.length() + limit.length() + 3);
+            render(sql, union);
+            render(sql, orderBy);
+            render(sql, offset);
+            render(sql, limit);
+            return sql.toString();
+        }
+
+        /**
+         * Immutable copy of the query rendered once.
+         */
+        public CompiledQuery compile() {
+            return new CompiledQuery(this);
         }
 
         public Iterable<Object> params() {
@@ -642,11 +1116,18 @@ public abstract class Sql {
 
         @Override
         public String toString() {
-            return new Concat(""," ").defaultValue(null)
-                    .append(into)
-                    .append(columns)
-                    .append(values)
-                    .toString();
+            StringBuilder sql = new StringBuilder(into.length() + columns.length() + values.length() + 2);
+            render(sql, into);
+            render(sql, columns);
+            render(sql, values);
+            return sql.toString();
+        }
+
+        /**
+         * Immutable copy of the query rendered once.
+         */
+        public CompiledUpdateQuery compile() {
+            return new CompiledUpdateQuery(this);
         }
 
         public Iterable<Object> params() {
@@ -762,13 +1243,21 @@ public abstract class Sql {
 
         @Override
         public String toString() {
-            return new Concat(""," ").defaultValue(null)
-                    .append(update)
-                    .append(set)
-                    .append(where)
-                    .append(orderBy)
-                    .append(limit)
-                    .toString();
+            StringBuilder sql = new StringBuilder(update.length() + set.length() + where.query.length()
+                    + orderBy.length() + limit.length() + 4);
+            render(sql, update);
+            render(sql, set);
+            render(sql, where.query);
+            render(sql, orderBy);
+            render(sql, limit);
+            return sql.toString();
+        }
+
+        /**
+         * Immutable copy of the query rendered once.
+         */
+        public CompiledUpdateQuery compile() {
+            return new CompiledUpdateQuery(this);
         }
 
         public Iterable<Object> params() {
@@ -830,11 +1319,18 @@ public abstract class Sql {
 
         @Override
         public String toString() {
-            return new Concat(""," ").defaultValue(null)
-                    .append(from)
-                    .append(using)
-                    .append(where)
-                    .toString();
+            StringBuilder sql = new StringBuilder(from.length() + using.length() + where.query.length() + 2);
+            sql.append(from);
+            render(sql, using);
+            render(sql, where.query);
+            return sql.toString();
+        }
+
+        /**
+         * Immutable copy of the query rendered once.
+         */
+        public CompiledUpdateQuery compile() {
+            return new CompiledUpdateQuery(this);
         }
 
         public Iterable<Object> params() {
@@ -859,6 +1355,8 @@ public abstract class Sql {
     public static Select from(Class<?>... classes) { return new Select().from(classes); }
     public static Select from(Select subquery, String name) { return new Select().from(subquery, name); }
 
+    public static Keyset keyset(Select select, int size, String... orderBy) { return new Keyset(select, size, orderBy); }
+
     public static Union union() { return new Union(); }
     public static Union union(Select expr) { return new Union().union(expr); }
     public static Union union(Select... expr) { return new Union().union(expr); }
@@ -883,6 +1381,8 @@ public abstract class Sql {
     public static Delete deleteOnly(String table) { return new Delete(table, true); }
     public static Delete deleteOnly(Class<?> clazz) { return new Delete(clazz, true); }
 
+    public static Param param(String name) { return new Param(name); }
+
     public static Where where() { return new Where(); }
     public static Where where(String expr, Object... params) { return new Where().and(expr, params); }
     public static Where where(Where where) { return new Where().and(where); }
@@ -905,91 +1405,102 @@ public abstract class Sql {
     public static FinalUpdateQuery finalQuery(UpdateQuery src, Object... params) { return new FinalUpdateQuery(src, params); }
     public static FinalUpdateQuery finalQuery(UpdateQuery src, Iterable<?> params) { return new FinalUpdateQuery(src, params); }
 
+    public static CompiledQuery compile(Query src) { return new CompiledQuery(src); }
+    public static CompiledUpdateQuery compile(UpdateQuery src) { return new CompiledUpdateQuery(src); }
+
     public static String resolve(InlineableQuery query) { return resolve(query.toString(), query.params()); }
     public static String resolve(UpdateQuery query) { return resolve(query.toString(), query.params()); }
     private static String resolve(String query, Iterable<Object> params) { return resolve(query, params, 0, -1); }
     private static String resolve(String query, Iterable<Object> params, int start, int end) {
+        int[] positions = placeholders(query);
         Iterator<Object> paramsIt = params.iterator();
-        int index = 0;
-        char quote = 0;
-        boolean backslash = false;
-        for (int ndx = 0; ndx < query.length(); ndx++) {
-            if (backslash) {
-                backslash = false;
-                continue;
-            }
-            char ch = query.charAt(ndx);
-            switch (ch) {
-            case '\\':
-                backslash = true;
-                break;
-            case '\'':
-            case '"':
-                quote = quote == 0 ? ch : quote == ch ? 0 : quote;
-                break;
-            case '?':
-                if (quote == 0) {
-                    if (index >= start && (end == -1 || index < end)) {
-                        String param = inlineParam(paramsIt.next());
-                        query = query.substring(0, ndx) + param + query.substring(ndx+1);
-                        ndx += param.length() - 1;
-                    }
-                    index++;
-                }
-                break;
+        StringBuilder sql = null;
+        int last = 0;
+        for (int index = 0; index < positions.length; index++) {
+            if (index >= start && (end == -1 || index < end)) {
+                if (sql == null) sql = new StringBuilder(query.length() + 8 * positions.length);
+                sql.append(query, last, positions[index]).append(inlineParam(paramsIt.next()));
+                last = positions[index] + 1;
             }
         }
         if (paramsIt.hasNext()) throw new IllegalArgumentException("Too many parameters");
-        return query;
+        if (sql == null) return query;
+        return sql.append(query, last, query.length()).toString();
     }
 
     public static FinalQuery expands(InlineableQuery query) { return expands(query.toString(), query.params()); }
     public static FinalQuery expands(UpdateQuery query) { return expands(query.toString(), query.params()); }
     private static FinalQuery expands(String query, Iterable<Object> params) { return expands(query, params, 0, -1); }
     private static FinalQuery expands(String query, Iterable<Object> params, int start, int end) {
+        int[] positions = placeholders(query);
         List<Object> finalParams = new ArrayList<Object>();
         Iterator<Object> paramsIt = params.iterator();
-        int index = 0;
+        StringBuilder sql = null;
+        int last = 0;
+        for (int index = 0; index < positions.length; index++) {
+            if (index >= start && (end == -1 || index < end)) {
+                Object param = paramsIt.next();
+                if (param instanceof InlineableQuery) {
+                    InlineableQuery inlineParam = (InlineableQuery) param;
+                    FinalQuery finalParam = expands(inlineParam.toString(), inlineParam.params(), 0, -1);
+                    if (sql == null) sql = new StringBuilder(query.length() + finalParam.query.length() + 2);
+                    sql.append(query, last, positions[index]).append('(').append(finalParam.query).append(')');
+                    last = positions[index] + 1;
+                    finalParams.addAll(finalParam.params);
+                } else {
+                    finalParams.add(param);
+                }
+            }
+        }
+        if (paramsIt.hasNext()) throw new IllegalArgumentException("Too many parameters");
+        FinalQuery finalQuery = new FinalQuery(sql == null ? query : sql.append(query, last, query.length()).toString());
+        finalQuery.params.addAll(finalParams);
+        return finalQuery;
+    }
+
+    /**
+     * Positions of the ? placeholders of a query, skipping quoted strings,
+     * backslash escaped characters, -- line comments and block comments.
+     */
+    static int[] placeholders(String query) {
+        int[] positions = new int[8];
+        int count = 0;
         char quote = 0;
-        boolean backslash = false;
-        for (int ndx = 0; ndx < query.length(); ndx++) {
-            if (backslash) {
-                backslash = false;
+        final int length = query.length();
+        for (int ndx = 0; ndx < length; ndx++) {
+            char ch = query.charAt(ndx);
+            if (ch == '\\') {
+                ndx++;
+                continue;
+            }
+            if (quote != 0) {
+                if (ch == quote) quote = 0;
                 continue;
             }
-            char ch = query.charAt(ndx);
             switch (ch) {
-            case '\\':
-                backslash = true;
-                break;
             case '\'':
             case '"':
-                quote = quote == 0 ? ch : quote == ch ? 0 : quote;
+                quote = ch;
                 break;
-            case '?':
-                if (quote == 0) {
-                    final Object param;
-                    if (index >= start && (end == -1 || index < end)) {
-                        param = paramsIt.next();
-                        if (param instanceof InlineableQuery) {
-                            InlineableQuery inlineParam = (InlineableQuery) param;
-                            FinalQuery finalParam = expands(inlineParam.toString(), inlineParam.params(), 0, -1);
-                            query = query.substring(0, ndx) +"("+ finalParam.query +")"+ query.substring(ndx+1);
-                            ndx += finalParam.query.length() + 2 - 1;
-                            finalParams.addAll(finalParam.params);
-                        } else {
-                            finalParams.add(param);
-                        }
-                    }
-                    index++;
+            case '-':
+                if (ndx + 1 < length && query.charAt(ndx + 1) == '-') {
+                    ndx = query.indexOf('\n', ndx + 2);
+                    if (ndx < 0) ndx = length;
+                }
+                break;
+            case '/':
+                if (ndx + 1 < length && query.charAt(ndx + 1) == '*') {
+                    int close = query.indexOf("*/", ndx + 2);
+                    ndx = close < 0 ? length : close + 1;
                 }
                 break;
+            case '?':
+                if (count == positions.length) positions = Arrays.copyOf(positions, count * 2);
+                positions[count++] = ndx;
+                break;
             }
         }
-        if (paramsIt.hasNext()) throw new IllegalArgumentException("Too many parameters");
-        FinalQuery finalQuery = new FinalQuery(query);
-        finalQuery.params.addAll(finalParams);
-        return finalQuery;
+        return Arrays.copyOf(positions, count);
     }
 
     public static String table(String name) {
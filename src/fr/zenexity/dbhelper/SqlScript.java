@@ -1,16 +1,19 @@
 package fr.zenexity.dbhelper;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.StringWriter;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
-public class SqlScript implements Iterable<Sql.FinalUpdateQuery> {
+public class SqlScript implements Iterable<Sql.FinalUpdateQuery>, Closeable {
 
     public static final String defaultDelimiter = ";";
 
@@ -80,28 +83,100 @@ public class SqlScript implements Iterable<Sql.FinalUpdateQuery> {
         return loadScript(script, null);
     }
 
+    /**
+     * Split the script on every delimiter, even inside quotes or comments.
+     * Use stream() or map() to skip them.
+     */
     public static List<String> loadScript(String script, String delimiter) {
         if (delimiter == null) delimiter = defaultDelimiter;
         List<String> commands = new ArrayList<String>();
-        while (script.length() != 0) {
+        int start = 0;
+        while (start < script.length()) {
             final String command;
-            int ndx = script.indexOf(delimiter);
+            int ndx = script.indexOf(delimiter, start);
             if (ndx == -1) {
-                command = script.trim();
-                script = "";
+                command = script.substring(start).trim();
+                start = script.length();
             } else {
-                command = script.substring(0, ndx).trim();
-                script = script.substring(ndx+1);
+                command = script.substring(start, ndx).trim();
+                start = ndx+1;
             }
             if (command.length() != 0) commands.add(command);
         }
         return commands;
     }
 
+    /**
+     * The commands are read from the stream while iterating over the script,
+     * the script can only be iterated once. Delimiters inside quotes and
+     * comments are skipped, commands made only of comments are dropped.
+     * The stream is closed at the end of the iteration or by close(),
+     * Jdbc.execute(SqlScript) closes it even if a command fails.
+     */
+    public static SqlScript stream(Reader scriptReader) {
+        return stream(scriptReader, null);
+    }
+
+    public static SqlScript stream(Reader scriptReader, String delimiter) {
+        return new SqlScript(new SqlScriptReader(scriptReader, delimiter));
+    }
+
+    public static SqlScript stream(InputStream scriptStream) {
+        return stream(new InputStreamReader(scriptStream), null);
+    }
+
+    public static SqlScript stream(InputStream scriptStream, String encoding) {
+        return stream(scriptStream, encoding, null);
+    }
+
+    public static SqlScript stream(InputStream scriptStream, String encoding, String delimiter) {
+        return stream(encoding == null
+                ? new InputStreamReader(scriptStream)
+                : new InputStreamReader(scriptStream, Charset.forName(encoding)), delimiter);
+    }
+
+    public static SqlScript stream(File scriptFile) throws IOException {
+        return stream(new FileInputStream(scriptFile));
+    }
+
+    public static SqlScript stream(File scriptFile, String encoding) throws IOException {
+        return stream(new FileInputStream(scriptFile), encoding);
+    }
+
+    public static SqlScript stream(File scriptFile, String encoding, String delimiter) throws IOException {
+        return stream(new FileInputStream(scriptFile), encoding, delimiter);
+    }
+
+    /**
+     * The file is memory-mapped and each command is decoded while iterating
+     * over the script, the script can be iterated several times.
+     * Fall back to a streamed script if the encoding is not supported by
+     * SqlScriptMapping.
+     */
+    public static SqlScript map(File scriptFile) throws IOException {
+        return map(scriptFile, null, null);
+    }
+
+    public static SqlScript map(File scriptFile, String encoding) throws IOException {
+        return map(scriptFile, encoding, null);
+    }
+
+    public static SqlScript map(File scriptFile, String encoding, String delimiter) throws IOException {
+        Charset charset = encoding == null ? Charset.defaultCharset() : Charset.forName(encoding);
+        if (!SqlScriptMapping.supports(charset)) return stream(scriptFile, charset.name(), delimiter);
+        return new SqlScript(new SqlScriptMapping(scriptFile, charset.name(), delimiter));
+    }
+
     private final List<Sql.FinalUpdateQuery> commands;
+    private final Iterable<String> source;
 
     public SqlScript() {
-        commands = new ArrayList<Sql.FinalUpdateQuery>();
+        this(null);
+    }
+
+    private SqlScript(Iterable<String> source) {
+        this.commands = new ArrayList<Sql.FinalUpdateQuery>();
+        this.source = source;
     }
 
     public void add(Sql.UpdateQuery query) {
@@ -112,8 +187,40 @@ public class SqlScript implements Iterable<Sql.FinalUpdateQuery> {
         commands.add(new Sql.FinalUpdateQuery(query));
     }
 
+    /**
+     * Commands added to a streamed script are iterated after the streamed ones.
+     */
     public Iterator<Sql.FinalUpdateQuery> iterator() {
-        return commands.iterator();
+        if (source == null) return commands.iterator();
+        final Iterator<String> streamed = source.iterator();
+        return new Iterator<Sql.FinalUpdateQuery>() {
+            private Iterator<Sql.FinalUpdateQuery> added;
+
+            public boolean hasNext() {
+                if (added == null) {
+                    if (streamed.hasNext()) return true;
+                    added = commands.iterator();
+                }
+                return added.hasNext();
+            }
+
+            public Sql.FinalUpdateQuery next() {
+                if (hasNext() && added == null) return new Sql.FinalUpdateQuery(streamed.next());
+                return added.next();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Close the stream of a streamed script, it is closed automatically at
+     * the end of the iteration.
+     */
+    public void close() throws SqlException {
+        if (source instanceof SqlScriptReader) ((SqlScriptReader) source).close();
     }
 
 }
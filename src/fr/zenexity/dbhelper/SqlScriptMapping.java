@@ -0,0 +1,160 @@
+package fr.zenexity.dbhelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Split the SQL commands of a memory-mapped script file.
+ * Commands are located directly in the mapped bytes and each one is decoded
+ * only when the iteration reaches it, so the heap only holds one command.
+ * Requires an encoding where ASCII characters are encoded as single bytes
+ * which are never part of other characters, like UTF-8 or ISO-8859-*.
+ */
+public class SqlScriptMapping implements Iterable<String> {
+
+    private static final int chunkBits = 30;
+    private static final int chunkSize = 1 << chunkBits;
+
+    private final MappedByteBuffer[] chunks;
+    private final long size;
+    private final Charset charset;
+    private final byte[] delimiter;
+
+    public SqlScriptMapping(File scriptFile, String encoding, String delimiter) throws IOException {
+        if (delimiter == null) delimiter = SqlScript.defaultDelimiter;
+        if (delimiter.length() == 0) throw new IllegalArgumentException("Empty delimiter");
+        this.charset = encoding == null ? Charset.defaultCharset() : Charset.forName(encoding);
+        if (!supports(charset)) throw new IllegalArgumentException("Unsupported encoding: "+ charset.name());
+        this.delimiter = delimiter.getBytes(charset.name());
+
+        RandomAccessFile file = new RandomAccessFile(scriptFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            size = channel.size();
+            chunks = new MappedByteBuffer[(int) ((size + chunkSize - 1) / chunkSize)];
+            for (int i = 0; i < chunks.length; i++) {
+                long position = (long) i * chunkSize;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(chunkSize, size - position));
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * True if commands can be split in the bytes of this encoding.
+     */
+    public static boolean supports(Charset charset) {
+        if (charset.name().equals("UTF-8")) return true;
+        if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1) return false;
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < ascii.length; i++) ascii[i] = (byte) i;
+        try {
+            return Arrays.equals(ascii, new String(ascii, "US-ASCII").getBytes(charset.name()));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    private byte get(long position) {
+        return chunks[(int) (position >>> chunkBits)].get((int) position & (chunkSize - 1));
+    }
+
+    private String decode(long start, long end) throws SqlException {
+        int length = (int) (end - start);
+        ByteBuffer bytes;
+        int chunk = (int) (start >>> chunkBits);
+        if (chunk == (int) ((end - 1) >>> chunkBits)) {
+            bytes = chunks[chunk].duplicate();
+            int offset = (int) start & (chunkSize - 1);
+            bytes.limit(offset + length).position(offset);
+        } else {
+            bytes = ByteBuffer.allocate(length);
+            for (long position = start; position < end; position++) bytes.put(get(position));
+            bytes.flip();
+        }
+        try {
+            return charset.newDecoder().decode(bytes).toString();
+        } catch (CharacterCodingException e) {
+            throw new SqlException(e);
+        }
+    }
+
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private final SqlScriptReader.Lexer lexer = new SqlScriptReader.Lexer();
+            private long position = 0;
+            private long nextStart = -1;
+            private long nextEnd = -1;
+
+            private void load() {
+                while (nextStart < 0 && position < size) {
+                    long start = position;
+                    long end = size;
+                    lexer.reset();
+                    while (position < size) {
+                        int b = get(position++) & 0xff;
+                        if (lexer.code(b) && b == (delimiter[delimiter.length - 1] & 0xff) && endsWithDelimiter(start)) {
+                            end = position - delimiter.length;
+                            break;
+                        }
+                    }
+                    command(start, end);
+                }
+            }
+
+            private boolean endsWithDelimiter(long start) {
+                long offset = position - delimiter.length;
+                if (offset < start) return false;
+                for (int i = 0; i < delimiter.length; i++) {
+                    if (get(offset + i) != delimiter[i]) return false;
+                }
+                return true;
+            }
+
+            private void command(long start, long end) {
+                while (start < end && (get(start) & 0xff) <= ' ') start++;
+                while (end > start && (get(end - 1) & 0xff) <= ' ') end--;
+                SqlScriptReader.Lexer blank = new SqlScriptReader.Lexer();
+                boolean content = false;
+                for (long i = start; i < end && !content; i++) content = blank.content(get(i) & 0xff);
+                if (content || blank.pending()) {
+                    nextStart = start;
+                    nextEnd = end;
+                }
+            }
+
+            public boolean hasNext() {
+                load();
+                return nextStart >= 0;
+            }
+
+            public String next() {
+                load();
+                if (nextStart < 0) throw new NoSuchElementException();
+                String command = decode(nextStart, nextEnd);
+                nextStart = -1;
+                nextEnd = -1;
+                return command;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,231 @@
+package fr.zenexity.dbhelper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read SQL commands one by one from a character stream.
+ * Delimiters inside quoted strings, -- line comments and block comments are
+ * skipped, commands made only of blanks and comments are ignored.
+ * Only the current command is kept in memory, the reader is closed at the
+ * end of the iteration.
+ */
+public class SqlScriptReader implements Iterator<String>, Iterable<String>, Closeable {
+
+    private final Reader reader;
+    private final String delimiter;
+    private final char[] buffer;
+    private int position;
+    private int limit;
+    private final Lexer lexer;
+    private final StringBuilder command;
+    private String next;
+    private boolean loadNext;
+
+    public SqlScriptReader(Reader reader, String delimiter) {
+        if (delimiter == null) delimiter = SqlScript.defaultDelimiter;
+        if (delimiter.length() == 0) throw new IllegalArgumentException("Empty delimiter");
+        this.reader = reader;
+        this.delimiter = delimiter;
+        this.buffer = new char[8192];
+        this.position = 0;
+        this.limit = 0;
+        this.lexer = new Lexer();
+        this.command = new StringBuilder();
+        this.next = null;
+        this.loadNext = true;
+    }
+
+    public SqlScriptReader(Reader reader) {
+        this(reader, null);
+    }
+
+    public SqlScriptReader(ReadableByteChannel channel, String encoding, String delimiter) {
+        this(Channels.newReader(channel, encoding == null ? Charset.defaultCharset().name() : encoding), delimiter);
+    }
+
+    public void close() throws SqlException {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new SqlException(e);
+        }
+    }
+
+    private String read() throws IOException {
+        if (position < 0) return null;
+        final int delimiterLength = delimiter.length();
+        final char delimiterEnd = delimiter.charAt(delimiterLength - 1);
+        while (true) {
+            if (position == limit) {
+                limit = reader.read(buffer);
+                position = 0;
+                if (limit == -1) {
+                    position = -1;
+                    return command(command.length());
+                }
+                continue;
+            }
+            char ch = buffer[position++];
+            command.append(ch);
+            if (lexer.code(ch) && ch == delimiterEnd && endsWithDelimiter()) {
+                String found = command(command.length() - delimiterLength);
+                if (found != null) return found;
+            }
+        }
+    }
+
+    private boolean endsWithDelimiter() {
+        int offset = command.length() - delimiter.length();
+        if (offset < 0) return false;
+        for (int i = 0; i < delimiter.length(); i++) {
+            if (command.charAt(offset + i) != delimiter.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private String command(int length) {
+        String found = command.substring(0, length).trim();
+        command.setLength(0);
+        lexer.reset();
+        if (found.length() == 0 || blank(found)) return null;
+        return found;
+    }
+
+    private void load() throws SqlException {
+        if (loadNext) try {
+            next = null;
+            while (position >= 0 && next == null) next = read();
+            loadNext = false;
+            if (next == null) close();
+        } catch (IOException e) {
+            throw new SqlException(e);
+        }
+    }
+
+    public boolean hasNext() throws SqlException {
+        load();
+        return next != null;
+    }
+
+    public String next() throws SqlException {
+        load();
+        if (next == null) throw new NoSuchElementException();
+        loadNext = true;
+        return next;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    public Iterator<String> iterator() {
+        return this;
+    }
+
+    /**
+     * True if the command only contains blanks and comments.
+     */
+    public static boolean blank(CharSequence command) {
+        Lexer lexer = new Lexer();
+        for (int i = 0; i < command.length(); i++) {
+            if (lexer.content(command.charAt(i))) return false;
+        }
+        return !lexer.pending();
+    }
+
+    /**
+     * Track quoted strings and comments of a SQL text read one character
+     * (or one byte of an ASCII compatible encoding) at a time.
+     */
+    static final class Lexer {
+        private static final int CODE = 0;
+        private static final int QUOTE = 1;
+        private static final int LINE_COMMENT = 2;
+        private static final int BLOCK_COMMENT = 3;
+
+        private int state;
+        private int quote;
+        private int previous;
+        private boolean escape;
+
+        Lexer() {
+            reset();
+        }
+
+        void reset() {
+            state = CODE;
+            quote = 0;
+            previous = 0;
+            escape = false;
+        }
+
+        /**
+         * True if ch is part of the code, outside quotes and comments.
+         */
+        boolean code(int ch) {
+            int last = previous;
+            previous = ch;
+            switch (state) {
+            case QUOTE:
+                if (escape) escape = false;
+                else if (ch == '\\') escape = true;
+                else if (ch == quote) state = CODE;
+                return false;
+            case LINE_COMMENT:
+                if (ch == '\n') state = CODE;
+                return false;
+            case BLOCK_COMMENT:
+                if (ch == '/' && last == '*') {
+                    state = CODE;
+                    previous = 0;
+                }
+                return false;
+            default:
+                if (ch == '\'' || ch == '"' || ch == '`') {
+                    state = QUOTE;
+                    quote = ch;
+                    return false;
+                }
+                if (ch == '-' && last == '-') {
+                    state = LINE_COMMENT;
+                    return false;
+                }
+                if (ch == '*' && last == '/') {
+                    state = BLOCK_COMMENT;
+                    previous = 0;
+                    return false;
+                }
+                return true;
+            }
+        }
+
+        /**
+         * True if the character before ch is content: not a blank nor a
+         * part of a comment.
+         */
+        boolean content(int ch) {
+            int last = previous;
+            boolean lastCode = state == CODE;
+            boolean code = code(ch);
+            if (state == LINE_COMMENT || state == BLOCK_COMMENT) return false;
+            if (lastCode && (last == '-' || last == '/')) return true;
+            if (!code) return state == QUOTE;
+            return ch != '-' && ch != '/' && !Character.isWhitespace(ch);
+        }
+
+        /**
+         * True if the last character read may be content.
+         */
+        boolean pending() {
+            return state == CODE && (previous == '-' || previous == '/');
+        }
+    }
+
+}
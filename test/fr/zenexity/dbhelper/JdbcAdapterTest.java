@@ -19,6 +19,29 @@ public class JdbcAdapterTest extends TestingDatabase {
         }
     }
 
+    public static class StringOnlyCaster implements JdbcAdapter.SelectiveCaster {
+        public int calls = 0;
+
+        public int priority() { return 500; }
+
+        public boolean accepts(Class<?> valueClass, Class<?> clazz) {
+            return valueClass == String.class && clazz == Integer.class;
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T> T cast(Class<T> clazz, Object value) throws Exception {
+            calls++;
+            if (!(value instanceof String)) throw new IllegalStateException("not accepted: "+ value);
+            return (T) Integer.valueOf((String) value);
+        }
+    }
+
+    public static class LongToDateSelectiveEncoder extends LongToDateSqlEncoder implements JdbcAdapter.SelectiveNormalizer {
+        public boolean accepts(Class<?> valueClass) {
+            return valueClass == Long.class;
+        }
+    }
+
     private JdbcAdapter adapter;
 
     @Before
@@ -129,4 +152,31 @@ public class JdbcAdapterTest extends TestingDatabase {
         assertEquals(new Long(213), adapter.cast(Long.class, new BigDecimal(213)));
     }
 
+    @Test
+    public void testSelectiveCaster() {
+        StringOnlyCaster caster = new StringOnlyCaster();
+        adapter = JdbcAdapter.defaultBuilder().register(caster).create();
+        assertEquals(Integer.valueOf(12), adapter.cast(Integer.class, "12"));
+        assertEquals(Integer.valueOf(13), adapter.cast(Integer.class, "13"));
+        assertEquals(Integer.valueOf(14), adapter.cast(Integer.class, Integer.valueOf(14)));
+        assertEquals(Long.valueOf(15), adapter.cast(Long.class, new BigDecimal(15)));
+        assertNull(adapter.cast(Integer.class, null));
+        assertEquals(Entry.DistType.FEDORA, adapter.cast(Entry.DistType.class, "FEDORA"));
+        assertEquals(2, caster.calls);
+    }
+
+    @Test
+    public void testSelectiveEncodeSqlChaining() {
+        JdbcAdapter chainedAdapter = JdbcAdapter.defaultBuilder()
+            .register(new LongToDateSelectiveEncoder())
+            .register(new JdbcAdapter.Date2SqlTimestampEncoder())
+            .create();
+        for (int i = 0; i < 2; i++) {
+            assertEquals(new Integer(213), chainedAdapter.encodeSqlValue(new Integer(213)));
+            assertEquals(new Timestamp(1344520308000L), chainedAdapter.encodeSqlValue(new Long(1344520308000L)));
+            assertEquals(Timestamp.class, chainedAdapter.encodeSqlValue(new Date(1344520308000L)).getClass());
+            assertNull(chainedAdapter.encodeSqlValue(null));
+        }
+    }
+
 }
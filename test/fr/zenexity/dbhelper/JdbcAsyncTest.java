@@ -0,0 +1,111 @@
+package fr.zenexity.dbhelper;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JdbcAsyncTest {
+
+    private static final String url = "jdbc:h2:mem:async;DB_CLOSE_DELAY=-1";
+
+    private JdbcPool pool;
+    private JdbcAsync async;
+
+    @Before
+    public void createPool() throws Exception {
+        Class.forName("org.h2.Driver");
+        pool = new JdbcPool(url).maxSize(3);
+        pool.run(new Jdbc.Work<Void>() {
+            public Void run(Jdbc jdbc) {
+                jdbc.executeUpdate("DROP TABLE IF EXISTS Numbers");
+                jdbc.executeUpdate("CREATE TABLE Numbers (id INT, name VARCHAR(255))");
+                for (int i = 0; i < 10; i++) jdbc.executeUpdate("INSERT INTO Numbers (id, name) VALUES (?, ?)", i, "n"+ i);
+                return null;
+            }
+        });
+        async = pool.async();
+    }
+
+    @After
+    public void closePool() {
+        async.close();
+        pool.close();
+    }
+
+    @Test
+    public void testQueries() throws Exception {
+        CompletableFuture<List<String>> names = async.execute(Sql.select("name").from("Numbers").where("id<?", 3).orderBy("id"), String.class);
+        CompletableFuture<List<Long>> count = async.execute(Sql.select("COUNT(*)").from("Numbers"), JdbcResult.primitiveFactory(Long.class));
+        assertEquals(Arrays.asList("n0", "n1", "n2"), names.get());
+        assertEquals(Arrays.asList(10L), count.get());
+        assertEquals(pool.size(), pool.idle());
+    }
+
+    @Test
+    public void testUpdates() throws Exception {
+        assertEquals(Integer.valueOf(5), async.execute(Sql.update("Numbers").set("name", "x").where("id>=?", 5)).get());
+        SqlScript script = SqlScript.fromString("DELETE FROM Numbers WHERE name='x'", "INSERT INTO Numbers (id) VALUES (10)");
+        async.execute(script).get();
+        assertEquals(Arrays.asList(6L), async.execute(Sql.select("COUNT(*)").from("Numbers"), Long.class).get());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        SqlScript script = SqlScript.fromString("DELETE FROM Numbers", "DELETE FROM UnknownTable");
+        try {
+            async.execute(script).get();
+            fail("ExecutionException expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof JdbcStatementException);
+        }
+        assertEquals(Arrays.asList(10L), async.execute(Sql.select("COUNT(*)").from("Numbers"), Long.class).get());
+    }
+
+    @Test
+    public void testNewExecutor() throws Exception {
+        ExecutorService executor = JdbcAsync.newExecutor(2);
+        try {
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger maxRunning = new AtomicInteger();
+            List<Future<?>> tasks = new ArrayList<Future<?>>();
+            for (int i = 0; i < 6; i++) {
+                tasks.add(executor.submit(new Runnable() {
+                    public void run() {
+                        int now = running.incrementAndGet();
+                        synchronized (maxRunning) {
+                            if (now > maxRunning.get()) maxRunning.set(now);
+                        }
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        running.decrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) task.get();
+            assertEquals(2, maxRunning.get());
+            assertEquals("JdbcAsync", executor.submit(new Callable<String>() {
+                public String call() {
+                    return Thread.currentThread().getName();
+                }
+            }).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
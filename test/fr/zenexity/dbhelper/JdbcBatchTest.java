@@ -0,0 +1,177 @@
+package fr.zenexity.dbhelper;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class JdbcBatchTest extends TestingDatabase {
+
+    private int count(String table) {
+        return jdbc.execute(Sql.select("COUNT(*)").from(table), Number.class).first().intValue();
+    }
+
+    @Test
+    public void testBatchInsert() {
+        List<Sql.UpdateQuery> queries = new ArrayList<Sql.UpdateQuery>();
+        for (int i = 0; i < 25; i++) {
+            queries.add(Sql.insert(Entry.class).set("distName", "Dist"+ i).set("version", String.valueOf(i)));
+        }
+        int[] counts = jdbc.executeBatch(queries, 10);
+        assertEquals(25, counts.length);
+        for (int count : counts) assertEquals(1, count);
+        assertEquals(30, count("Entry"));
+        assertEquals("12", jdbc.execute(Sql.select("version").from(Entry.class).where("distName=?", "Dist12"), String.class).first());
+    }
+
+    @Test
+    public void testBatchKeepsOrder() {
+        JdbcBatch<Void> batch = jdbc.newBatch(100);
+        batch.add(Sql.update(Entry.class).set("version", "a").where("distName=?", "Debian"));
+        batch.add(Sql.update(Entry.class).set("version", "b").where("distName=?", "Ubuntu"));
+        batch.add(Sql.delete(Entry.class).where("distName=?", "Debian"));
+        batch.add(Sql.update(Entry.class).set("version", "c").where("distName=?", "Debian"));
+        batch.add(Sql.update(Entry.class).set("version", "d").where("typeOrdinal>?", 1));
+        assertTrue(Arrays.equals(new int[] {1, 1, 1, 0, 3}, batch.execute()));
+        assertEquals(4, count("Entry"));
+        assertEquals("b", jdbc.execute(Sql.select("version").from(Entry.class).where("distName=?", "Ubuntu"), String.class).first());
+    }
+
+    @Test
+    public void testFlush() {
+        JdbcBatch<Void> batch = jdbc.newBatch(3);
+        for (int i = 0; i < 4; i++) batch.add("INSERT INTO Entry (distName) VALUES (?)", "Dist"+ i);
+        assertEquals(3, batch.updateCounts().length);
+        assertEquals(8, count("Entry"));
+        batch.close();
+        assertEquals(8, count("Entry"));
+        assertEquals(3, batch.updateCounts().length);
+    }
+
+    @Test
+    public void testStatementReuse() {
+        jdbc.statementCache(4);
+        JdbcBatch<Void> batch = jdbc.newBatch(2);
+        for (int i = 0; i < 5; i++) batch.add(Sql.insert(Entry.class).set("distName", "Dist"+ i));
+        batch.add(Sql.delete(Entry.class).where("distName=?", "Dist0"));
+        batch.add(Sql.insert(Entry.class).set("distName", "Dist5"));
+        assertEquals(7, batch.execute().length);
+        assertEquals(10, count("Entry"));
+        assertEquals(1, jdbc.statementCache().hits());
+    }
+
+    /**
+     * Some drivers only return the key of the last row of executeBatch.
+     */
+    private boolean returnsAllBatchKeys() throws SQLException {
+        jdbc.executeUpdate("DROP TABLE IF EXISTS BatchKeys");
+        jdbc.executeUpdate("CREATE TABLE BatchKeys (id INTEGER IDENTITY, name VARCHAR(255))");
+        PreparedStatement statement = jdbc.connection.prepareStatement("INSERT INTO BatchKeys (name) VALUES (?)", Statement.RETURN_GENERATED_KEYS);
+        try {
+            statement.setString(1, "a");
+            statement.addBatch();
+            statement.setString(1, "b");
+            statement.addBatch();
+            statement.executeBatch();
+            ResultSet keys = statement.getGeneratedKeys();
+            int count = 0;
+            while (keys.next()) count++;
+            keys.close();
+            return count == 2;
+        } finally {
+            statement.close();
+            jdbc.executeUpdate("DELETE FROM BatchKeys");
+        }
+    }
+
+    @Test
+    public void testGeneratedKeys() throws Exception {
+        Assume.assumeTrue(jdbc.connection.getMetaData().supportsGetGeneratedKeys());
+        int batchSize = returnsAllBatchKeys() ? 2 : 1;
+        JdbcBatch<Number> batch = jdbc.newBatch(batchSize, Number.class);
+        for (int i = 0; i < 5; i++) batch.add(Sql.insert("BatchKeys").set("name", "Key"+ i));
+        assertEquals(5 - 5 % batchSize, batch.generatedKeys().size());
+        assertEquals(5, batch.execute().length);
+
+        List<Long> ids = new ArrayList<Long>();
+        for (Number id : jdbc.execute(Sql.select("id").from("BatchKeys").orderBy("name"), Number.class)) ids.add(id.longValue());
+        List<Long> keys = new ArrayList<Long>();
+        for (Number key : batch.generatedKeys()) keys.add(key.longValue());
+        assertEquals(5, ids.size());
+        assertEquals(ids, keys);
+    }
+
+    @Test
+    public void testGeneratedKeysLost() throws Exception {
+        Assume.assumeTrue(jdbc.connection.getMetaData().supportsGetGeneratedKeys());
+        Assume.assumeTrue(!returnsAllBatchKeys());
+        JdbcBatch<Number> batch = jdbc.newBatch(2, Number.class);
+        batch.add(Sql.insert("BatchKeys").set("name", "Key0"));
+        try {
+            batch.add(Sql.insert("BatchKeys").set("name", "Key1"));
+            fail("JdbcException expected");
+        } catch (JdbcException e) {
+            assertTrue(e.getMessage().startsWith("1 generated keys returned for 2 rows"));
+        } finally {
+            batch.close();
+        }
+    }
+
+    @Test
+    public void testScript() {
+        SqlScript script = SqlScript.fromString(
+                "DROP TABLE IF EXISTS BatchEntry",
+                "CREATE TABLE BatchEntry (name VARCHAR(255), num INT)",
+                "INSERT INTO BatchEntry (name, num) VALUES ('a', 1)",
+                "INSERT INTO BatchEntry (name, num) VALUES ('b', 2)");
+        script.add(Sql.insert("BatchEntry").set("name", "c").set("num", 3));
+        script.add(Sql.insert("BatchEntry").set("name", "d").set("num", 4));
+        script.add("UPDATE BatchEntry SET num = num * 10");
+        int[] counts = jdbc.executeBatch(script, 100);
+        assertEquals(7, counts.length);
+        assertTrue(Arrays.equals(new int[] {1, 1, 1, 1, 4}, Arrays.copyOfRange(counts, 2, 7)));
+        assertEquals(Long.valueOf(100), jdbc.execute(Sql.select("SUM(num)").from("BatchEntry"), Long.class).first());
+    }
+
+    @Test
+    public void testScriptCommitEvery() throws Exception {
+        SqlScript script = new SqlScript();
+        for (int i = 0; i < 4; i++) script.add("INSERT INTO Entry (distName) VALUES ('Dist"+ i +"')");
+        script.add("INSERT INTO UnknownTable (distName) VALUES ('Dist')");
+        try {
+            jdbc.executeBatch(script, 100, 3);
+            fail("JdbcStatementException expected");
+        } catch (JdbcStatementException e) {
+        }
+        assertTrue(jdbc.connection.getAutoCommit());
+        assertEquals(8, count("Entry"));
+    }
+
+    @Test
+    public void testStreamedScriptClosedOnError() {
+        final boolean[] closed = new boolean[1];
+        SqlScript script = SqlScript.stream(new StringReader("DELETE FROM Entry; DELETE FROM UnknownTable; DELETE FROM Entry;") {
+            @Override
+            public void close() {
+                closed[0] = true;
+                super.close();
+            }
+        });
+        try {
+            jdbc.execute(script);
+            fail("JdbcStatementException expected");
+        } catch (JdbcStatementException e) {
+        }
+        assertTrue(closed[0]);
+    }
+
+}
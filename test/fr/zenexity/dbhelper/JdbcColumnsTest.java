@@ -0,0 +1,86 @@
+package fr.zenexity.dbhelper;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class JdbcColumnsTest extends TestingDatabase {
+
+    @Test
+    public void testColumns() {
+        Sql.Select query = Sql.select("distName", "num", "typeOrdinal", "CAST(typeOrdinal AS BIGINT) AS big", "CAST(NULL AS INT) AS nothing")
+                .from(Entry.class).orderBy("typeOrdinal");
+        JdbcColumns columns = jdbc.executeColumns(query);
+        assertEquals(5, columns.size());
+        assertEquals(5, columns.columnCount());
+        assertEquals(Object.class, columns.type(0));
+        assertEquals(double.class, columns.type(1));
+        assertEquals(int.class, columns.type(2));
+        assertEquals(long.class, columns.type(3));
+        assertEquals(2, columns.column("TYPEORDINAL"));
+        assertEquals(-1, columns.column("unknown"));
+
+        assertEquals("Debian", columns.getObject(0, 0));
+        assertEquals(5.0, columns.getDouble(0, 1), 0);
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4}, columns.ints(2));
+        assertArrayEquals(new long[] {0, 1, 2, 3, 4}, columns.longs(3));
+        assertEquals(4L, columns.getLong(4, 2));
+        assertEquals(4.0, columns.getDouble(4, 3), 0);
+
+        for (int row = 0; row < columns.size(); row++) {
+            assertFalse(columns.isNull(row, 2));
+            assertTrue(columns.isNull(row, 4));
+            assertNull(columns.getObject(row, 4));
+        }
+    }
+
+    @Test
+    public void testColumnsGrowth() {
+        JdbcBatch<Void> batch = jdbc.newBatch();
+        for (int i = 0; i < 200; i++) {
+            batch.add(Sql.insert(Entry.class).set("distName", "Dist"+ i).set("num", i).set("typeOrdinal", i % 3 == 0 ? null : i));
+        }
+        batch.execute();
+
+        JdbcColumns columns = jdbc.executeColumns(Sql.select("typeOrdinal").from(Entry.class).where("distName LIKE ?", "Dist%").orderBy("num"));
+        assertEquals(200, columns.size());
+        for (int row = 0; row < columns.size(); row++) {
+            assertEquals(row % 3 == 0, columns.isNull(row, 0));
+            if (row % 3 != 0) assertEquals(Integer.valueOf(row), columns.getObject(row, 0));
+        }
+    }
+
+    @Test
+    public void testIteratorColumns() {
+        Sql.Select query = Sql.select("typeOrdinal").from(Entry.class).orderBy("typeOrdinal");
+        JdbcIterator<Integer> it = jdbc.execute(query, Integer.class).limit(4);
+        assertEquals(Integer.valueOf(0), it.next());
+        assertTrue(it.hasNext());
+        JdbcColumns columns = it.columns();
+        assertArrayEquals(new int[] {1, 2, 3}, columns.ints(0));
+        assertFalse(it.hasNext());
+
+        columns = jdbc.executeColumns(query, 1, 2);
+        assertArrayEquals(new int[] {1, 2}, columns.ints(0));
+
+        columns = jdbc.executeColumns(query, 0, 0);
+        assertEquals(0, columns.size());
+        assertEquals(0, columns.columnCount());
+    }
+
+    @Test
+    public void testWrongColumnType() {
+        JdbcColumns columns = jdbc.executeColumns(Sql.select("distName", "typeOrdinal").from(Entry.class));
+        try {
+            columns.ints(0);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            columns.getInt(5, 1);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException e) {
+        }
+    }
+
+}
@@ -1,7 +1,23 @@
 package fr.zenexity.dbhelper;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -532,4 +548,247 @@ public class JdbcIteratorTest extends TestingDatabase {
         }
     }
 
+    @Test
+    public void stream() throws Exception {
+        Sql.Select query = Sql.select("distName").from(Entry.class).orderBy("distName");
+        JdbcStatement qs = jdbc.streamFetchSize(2).newStreamStatement(query);
+        assertEquals(2, qs.fetchSize());
+        qs.close();
+        JdbcIterator<String> it = jdbc.stream(query, String.class);
+        assertEquals(ResultSet.TYPE_FORWARD_ONLY, it.resultSet().getType());
+        assertEquals(Arrays.asList("Debian", "Fedora", "Mandriva", "Slackware", "Ubuntu"), it.list());
+    }
+
+    @Test
+    public void streamWindow() {
+        Sql.Select query = Sql.select("distName").from(Entry.class).orderBy("distName");
+        assertEquals(Arrays.asList("Fedora", "Mandriva"), jdbc.stream(query, 1, 2, String.class).list());
+        assertEquals(Arrays.asList("Ubuntu"), jdbc.stream(query, 4, 5, String.class).list());
+        assertEquals(0, jdbc.stream(query, 6, 5, String.class).list().size());
+        assertEquals(Arrays.asList("Debian"), jdbc.stream(query, -1, 2, String.class).list());
+    }
+
+    @Test
+    public void defaultFetchSize() throws Exception {
+        jdbc.statementCache(2);
+        Sql.Select query = Sql.select("distName").from(Entry.class);
+        JdbcStatement qs = jdbc.defaultFetchSize(3).newStatement(query);
+        assertEquals(3, qs.fetchSize());
+        qs.close();
+        qs = jdbc.defaultFetchSize(0).newStatement(query);
+        assertEquals(0, qs.fetchSize());
+        qs.close();
+    }
+
+    @Test
+    public void page() {
+        Sql.Select query = Sql.select("distName").from(Entry.class).orderBy("distName");
+        assertEquals(Sql.Dialect.LIMIT_OFFSET, jdbc.dialect());
+        assertEquals(Arrays.asList("Fedora", "Mandriva"), jdbc.page(query, 1, 2, String.class).list());
+        assertEquals(Arrays.asList("Debian"), jdbc.page(query, -1, 2, String.class).list());
+        assertEquals(0, jdbc.page(query, 0, 0, String.class).list().size());
+        assertEquals(0, jdbc.page(query, 5, 2, String.class).list().size());
+        assertEquals("Ubuntu", jdbc.page(query, 4, 1, String.class).first());
+    }
+
+    @Test
+    public void keysetPage() {
+        Sql.Select query = Sql.select("distName").from(Entry.class).orderBy("distName");
+        Sql.Select next = Sql.clone(query).where(Sql.Where.after(new String[] {"distName"}, "Fedora"));
+        assertEquals(Arrays.asList("Mandriva", "Slackware"), jdbc.page(next, 0, 2, String.class).list());
+    }
+
+    @Test
+    public void keysetIterator() {
+        Sql.Keyset keyset = Sql.keyset(Sql.select("distName", "version").from(Entry.class).where("num>?", 1), 2, "distName");
+        JdbcIterator.Keyset<String> it = jdbc.keyset(keyset, null, String.class);
+        assertNull(it.token());
+        assertEquals("Debian", it.next());
+        assertEquals("Fedora", it.next());
+        assertEquals(new Sql.Keyset.Token("Fedora"), it.token());
+        assertTrue(it.hasNext());
+        assertEquals(new Sql.Keyset.Token("Fedora"), it.token());
+        assertEquals(Arrays.asList("Mandriva", "Slackware", "Ubuntu"), it.list());
+        assertEquals(new Sql.Keyset.Token("Ubuntu"), it.token());
+        assertFalse(it.hasNext());
+
+        assertEquals(Arrays.asList("Slackware", "Ubuntu"), jdbc.keyset(keyset, new Sql.Keyset.Token("Mandriva"), String.class).list());
+        assertEquals(Arrays.asList("Debian", "Fedora", "Mandriva"), jdbc.keyset(keyset, null, String.class).limit(3).list());
+    }
+
+    @Test
+    public void keysetIteratorMultipleColumns() throws Exception {
+        Sql.Keyset keyset = Sql.keyset(Sql.select("*").from(Entry.class), 3, "typeName DESC", "Entry.distName");
+        assertEquals("SELECT * FROM Entry WHERE ((typeName<?) OR (typeName=? AND Entry.distName>?)) ORDER BY typeName DESC, Entry.distName",
+                keyset.page(new Sql.Keyset.Token("a", "b")).toString());
+
+        JdbcIterator.Keyset<Entry> it = jdbc.keyset(keyset, null, Entry.class);
+        assertEquals("Ubuntu", it.next().distName);
+        assertEquals("Slackware", it.next().distName);
+        Sql.Keyset.Token token = it.token();
+        it.close();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(token);
+        out.close();
+        token = (Sql.Keyset.Token) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        List<String> names = new ArrayList<String>();
+        for (Entry entry : jdbc.keyset(keyset, token, Entry.class)) names.add(entry.distName);
+        assertEquals(Arrays.asList("Mandriva", "Fedora", "Debian"), names);
+    }
+
+    @Test
+    public void keysetMissingColumn() {
+        try {
+            jdbc.keyset(Sql.keyset(Sql.select("version").from(Entry.class), 2, "distName"), null, String.class);
+            fail("JdbcIteratorException expected");
+        } catch (JdbcIteratorException e) {
+            assertEquals(NoSuchFieldException.class, e.getCause().getCause().getClass());
+        }
+    }
+
+    @Test
+    public void javaStream() {
+        JdbcIterator<String> it = jdbc.execute(Sql.select("distName").from(Entry.class).orderBy("typeOrdinal"), String.class);
+        assertEquals(Arrays.asList("Debian", "Ubuntu", "Fedora", "Mandriva", "Slackware"), it.stream().collect(Collectors.toList()));
+        assertNull(it.resultSet());
+    }
+
+    @Test
+    public void javaStreamClose() {
+        JdbcIterator<String> it = jdbc.execute(Sql.select("distName").from(Entry.class).orderBy("typeOrdinal"), String.class);
+        Stream<String> stream = it.stream();
+        try {
+            assertEquals(Arrays.asList("Debian", "Ubuntu"), stream.limit(2).collect(Collectors.toList()));
+            assertNotNull(it.resultSet());
+        } finally {
+            stream.close();
+        }
+        assertNull(it.resultSet());
+    }
+
+    @Test
+    public void javaStreamParallel() {
+        JdbcIterator<String> it = jdbc.execute(Sql.select("distName").from(Entry.class).orderBy("typeOrdinal"), String.class);
+        Stream<String> stream = it.stream(2);
+        try {
+            assertEquals("DEBIAN UBUNTU FEDORA MANDRIVA SLACKWARE", stream.parallel().map(new Function<String, String>() {
+                public String apply(String name) {
+                    return name.toUpperCase();
+                }
+            }).collect(Collectors.joining(" ")));
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void spliteratorBatches() {
+        JdbcIterator<String> it = jdbc.execute(Sql.select("distName").from(Entry.class).orderBy("typeOrdinal"), String.class).limit(4);
+        Spliterator<String> rows = new JdbcIterator.Batches<String>(it, 3);
+        assertEquals(4, rows.estimateSize());
+        assertTrue(rows.hasCharacteristics(Spliterator.ORDERED));
+        Spliterator<String> batch = rows.trySplit();
+        assertEquals(3, batch.estimateSize());
+        assertTrue(batch.hasCharacteristics(Spliterator.SIZED));
+        assertEquals(1, rows.estimateSize());
+        batch = rows.trySplit();
+        assertEquals(1, batch.estimateSize());
+        assertNull(rows.trySplit());
+        assertEquals(Long.MAX_VALUE, jdbc.execute(Sql.select("distName").from(Entry.class), String.class).spliterator().estimateSize());
+    }
+
+    @Test
+    public void prefetch() {
+        JdbcIterator<String> it = jdbc.execute(Sql.select("distName").from(Entry.class).orderBy("typeOrdinal"), String.class);
+        assertEquals(Arrays.asList("Debian", "Ubuntu", "Fedora", "Mandriva", "Slackware"), it.prefetch(2).list());
+        assertNull(it.resultSet());
+    }
+
+    @Test
+    public void prefetchLimit() {
+        JdbcIterator<String> it = jdbc.execute(Sql.select("distName").from(Entry.class).orderBy("typeOrdinal"), String.class);
+        assertEquals(Arrays.asList("Debian", "Ubuntu"), it.prefetch(10).limit(2).list());
+        assertNull(it.resultSet());
+    }
+
+    @Test
+    public void prefetchClose() {
+        JdbcIterator<String> it = jdbc.execute(Sql.select("distName").from(Entry.class).orderBy("typeOrdinal"), String.class);
+        JdbcIterator<String> prefetch = it.prefetch(1);
+        assertEquals("Debian", prefetch.next());
+        prefetch.close();
+        assertNull(it.resultSet());
+        assertFalse(prefetch.hasNext());
+        assertEquals(5, jdbc.execute(Sql.select("distName").from(Entry.class), String.class).list().size());
+    }
+
+    @Test
+    public void prefetchError() {
+        JdbcIterator<String> it = jdbc.execute(Sql.select("distName").from(Entry.class).orderBy("typeOrdinal"), new JdbcResult.Factory<String>() {
+            public void init(JdbcAdapter adapter, ResultSet result) {
+            }
+
+            public String create(ResultSet result) throws SQLException, JdbcResultException {
+                if (result.getRow() == 3) throw new JdbcResultException(new IllegalStateException("row 3"));
+                return result.getString(1);
+            }
+        });
+        JdbcIterator<String> prefetch = it.prefetch(4);
+        assertEquals("Debian", prefetch.next());
+        assertEquals("Ubuntu", prefetch.next());
+        try {
+            prefetch.hasNext();
+            fail("JdbcIteratorException expected");
+        } catch (JdbcIteratorException e) {
+            assertTrue(e.getCause() instanceof JdbcResultException);
+        }
+        assertFalse(prefetch.hasNext());
+        assertNull(it.resultSet());
+    }
+
+    @Test
+    public void prefetchExecutor() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            JdbcIterator<String> it = jdbc.execute(Sql.select("distName").from(Entry.class).orderBy("typeOrdinal"), String.class);
+            assertEquals(Arrays.asList("Debian", "Ubuntu", "Fedora", "Mandriva", "Slackware"), it.prefetch(2, executor).list());
+            assertNull(it.resultSet());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void prefetchCloseNotStarted() {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        JdbcIterator<String> it = jdbc.execute(Sql.select("distName").from(Entry.class), String.class);
+        JdbcIterator<String> prefetch = it.prefetch(2, new Executor() {
+            public void execute(Runnable task) {
+                tasks.add(task);
+            }
+        });
+        prefetch.close();
+        assertNull(it.resultSet());
+        tasks.get(0).run();
+        assertFalse(prefetch.hasNext());
+    }
+
+    @Test
+    public void prefetchAbandoned() throws Exception {
+        JdbcIterator<String> it = jdbc.execute(Sql.select("distName").from(Entry.class).orderBy("typeOrdinal"), String.class);
+        JdbcIterator<String> prefetch = it.prefetch(1, JdbcIterator.Prefetch.newThread, 100);
+        assertEquals("Debian", prefetch.next());
+        for (int i = 0; i < 50 && it.resultSet() != null; i++) Thread.sleep(100);
+        assertNull(it.resultSet());
+        try {
+            prefetch.next();
+            fail("JdbcIteratorException expected");
+        } catch (JdbcIteratorException e) {
+        }
+        assertFalse(prefetch.hasNext());
+    }
+
 }
@@ -0,0 +1,203 @@
+package fr.zenexity.dbhelper;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JdbcParallelTest {
+
+    private static final String url = "jdbc:h2:mem:parallel;DB_CLOSE_DELAY=-1";
+
+    private Jdbc jdbc;
+    private AtomicInteger opened;
+    private Supplier<Jdbc> connections;
+
+    @Before
+    public void loadData() {
+        jdbc = new Jdbc(TestingDatabase.getConnection("org.h2.Driver", url));
+        jdbc.executeUpdate("DROP TABLE IF EXISTS Numbers");
+        jdbc.executeUpdate("CREATE TABLE Numbers (id INT, name VARCHAR(255))");
+        JdbcBatch<Void> batch = jdbc.newBatch();
+        for (int i = 0; i < 100; i++) batch.add(Sql.insert("Numbers").set("id", i).set("name", i % 10 == 0 ? null : "n"+ i));
+        batch.execute();
+
+        opened = new AtomicInteger();
+        connections = new Supplier<Jdbc>() {
+            public Jdbc get() {
+                opened.incrementAndGet();
+                return new Jdbc(TestingDatabase.getConnection("org.h2.Driver", url));
+            }
+        };
+    }
+
+    @After
+    public void closeConnection() {
+        jdbc.executeUpdate("DROP TABLE IF EXISTS Numbers");
+        jdbc.close();
+    }
+
+    @Test
+    public void testPartitions() {
+        List<Sql.Where> partitions = JdbcParallel.partitions("id", 0, 99, 4);
+        assertEquals(4, partitions.size());
+        assertEquals("id>=? AND id<?", partitions.get(0).toString());
+        assertEquals(Arrays.<Object>asList(0L, 25L), partitions.get(0).params());
+        assertEquals("id>=? AND id<=?", partitions.get(3).toString());
+        assertEquals(Arrays.<Object>asList(75L, 99L), partitions.get(3).params());
+        assertEquals(1, JdbcParallel.partitions("id", 5, 5, 3).size());
+        assertEquals(2, JdbcParallel.partitions("id", 0, 1, 3).size());
+    }
+
+    @Test
+    public void testPartitionsExtremeBounds() {
+        assertContiguous(JdbcParallel.partitions("id", Long.MIN_VALUE, Long.MAX_VALUE, 4), Long.MIN_VALUE, Long.MAX_VALUE, 4);
+        assertContiguous(JdbcParallel.partitions("id", Long.MIN_VALUE, Long.MAX_VALUE, 3), Long.MIN_VALUE, Long.MAX_VALUE, 3);
+        assertContiguous(JdbcParallel.partitions("id", Long.MIN_VALUE, Long.MAX_VALUE, 2), Long.MIN_VALUE, Long.MAX_VALUE, 2);
+        assertContiguous(JdbcParallel.partitions("id", Long.MIN_VALUE, Long.MAX_VALUE, 1), Long.MIN_VALUE, Long.MAX_VALUE, 1);
+        assertContiguous(JdbcParallel.partitions("id", -1, Long.MAX_VALUE, 5), -1, Long.MAX_VALUE, 5);
+        assertContiguous(JdbcParallel.partitions("id", Long.MAX_VALUE - 1, Long.MAX_VALUE, 3), Long.MAX_VALUE - 1, Long.MAX_VALUE, 2);
+        assertContiguous(JdbcParallel.partitions("id", Long.MIN_VALUE, Long.MIN_VALUE + 1, 3), Long.MIN_VALUE, Long.MIN_VALUE + 1, 2);
+        assertContiguous(JdbcParallel.partitions("id", Long.MAX_VALUE, Long.MAX_VALUE, 3), Long.MAX_VALUE, Long.MAX_VALUE, 1);
+    }
+
+    private static void assertContiguous(List<Sql.Where> partitions, long min, long max, int count) {
+        assertEquals(count, partitions.size());
+        long low = min;
+        for (int i = 0; i < partitions.size(); i++) {
+            List<Object> params = new ArrayList<Object>();
+            for (Object param : partitions.get(i).params()) params.add(param);
+            assertEquals(Long.valueOf(low), params.get(0));
+            if (i == partitions.size() - 1) {
+                assertEquals("id>=? AND id<=?", partitions.get(i).toString());
+                assertEquals(Long.valueOf(max), params.get(1));
+            } else {
+                assertEquals("id>=? AND id<?", partitions.get(i).toString());
+                long high = (Long) params.get(1);
+                assertTrue(high > low);
+                low = high;
+            }
+        }
+    }
+
+    @Test
+    public void testExecutor() throws Exception {
+        final AtomicInteger tasks = new AtomicInteger();
+        final ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Executor executor = new Executor() {
+                public void execute(Runnable task) {
+                    tasks.incrementAndGet();
+                    pool.execute(task);
+                }
+            };
+            JdbcParallel parallel = new JdbcParallel(connections, executor).ordered(true).queueSize(3);
+            for (int n = 0; n < 2; n++) {
+                List<Integer> ids = parallel.execute(Sql.select("id").from("Numbers").orderBy("id"), "id", 0, 99, 5, Integer.class).list();
+                assertEquals(100, ids.size());
+                for (int i = 0; i < 100; i++) assertEquals(Integer.valueOf(i), ids.get(i));
+            }
+            assertEquals(10, tasks.get());
+            assertEquals(10, opened.get());
+            assertFalse(pool.isShutdown());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testExecutorRejected() {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        pool.shutdown();
+        JdbcIterator<Integer> it = new JdbcParallel(connections, pool)
+                .execute(Sql.select("id").from("Numbers"), "id", 0, 99, 2, Integer.class);
+        try {
+            it.list();
+            fail();
+        } catch (JdbcIteratorException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        } finally {
+            it.close();
+        }
+        assertEquals(0, opened.get());
+    }
+
+    @Test
+    public void testUnordered() {
+        List<Integer> ids = new JdbcParallel(connections)
+                .execute(Sql.select("id").from("Numbers"), "id", 0, 99, 4, Integer.class).list();
+        assertEquals(100, ids.size());
+        Collections.sort(ids);
+        for (int i = 0; i < 100; i++) assertEquals(Integer.valueOf(i), ids.get(i));
+        assertEquals(4, opened.get());
+    }
+
+    @Test
+    public void testOrdered() {
+        JdbcIterator<Integer> it = new JdbcParallel(connections).ordered(true).threads(2).queueSize(3)
+                .execute(Sql.select("id").from("Numbers").orderBy("id"), "id", 0, 99, 7, Integer.class);
+        List<Integer> ids = it.list();
+        assertEquals(100, ids.size());
+        for (int i = 0; i < 100; i++) assertEquals(Integer.valueOf(i), ids.get(i));
+        assertEquals(7, opened.get());
+    }
+
+    @Test
+    public void testFactoryPerPartition() {
+        final List<JdbcResult.Factory<String>> factories = Collections.synchronizedList(new ArrayList<JdbcResult.Factory<String>>());
+        List<Sql.Where> partitions = Arrays.asList(Sql.where("id<?", 50), Sql.where("id>=?", 50));
+        List<String> names = new JdbcParallel(connections).ordered(true).execute(Sql.select("name").from("Numbers").orderBy("id"), partitions, new Supplier<JdbcResult.Factory<String>>() {
+            public JdbcResult.Factory<String> get() {
+                JdbcResult.Factory<String> factory = JdbcResult.primitiveFactory(String.class);
+                factories.add(factory);
+                return factory;
+            }
+        }).list();
+        assertEquals(2, factories.size());
+        assertNotSame(factories.get(0), factories.get(1));
+        assertEquals(100, names.size());
+        assertNull(names.get(50));
+        assertEquals("n51", names.get(51));
+    }
+
+    @Test
+    public void testLimitAndClose() {
+        JdbcIterator<Integer> it = new JdbcParallel(connections).queueSize(1)
+                .execute(Sql.select("id").from("Numbers"), "id", 0, 99, 4, Integer.class);
+        it.limit(3);
+        assertEquals(3, it.list().size());
+        assertFalse(it.hasNext());
+        it.close();
+    }
+
+    @Test
+    public void testFailure() {
+        JdbcIterator<Integer> it = new JdbcParallel(connections)
+                .execute(Sql.select("unknown").from("Numbers"), "id", 0, 99, 2, Integer.class);
+        try {
+            it.list();
+            fail("JdbcIteratorException expected");
+        } catch (JdbcIteratorException e) {
+            assertTrue(e.getCause() instanceof JdbcStatementException);
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        assertFalse(new JdbcParallel(connections).execute(Sql.select("id").from("Numbers"), new ArrayList<Sql.Where>(), Integer.class).hasNext());
+        assertEquals(0, opened.get());
+    }
+
+}
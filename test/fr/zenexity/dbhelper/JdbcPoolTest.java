@@ -0,0 +1,255 @@
+package fr.zenexity.dbhelper;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JdbcPoolTest {
+
+    private static final String url = "jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1";
+
+    private JdbcPool pool;
+
+    @Before
+    public void createPool() throws Exception {
+        Class.forName("org.h2.Driver");
+        pool = new JdbcPool(url).maxSize(2).borrowTimeout(100);
+        Jdbc jdbc = pool.borrow();
+        try {
+            jdbc.executeUpdate("DROP TABLE IF EXISTS Numbers");
+            jdbc.executeUpdate("CREATE TABLE Numbers (id INT)");
+            for (int i = 0; i < 10; i++) jdbc.executeUpdate("INSERT INTO Numbers (id) VALUES (?)", i);
+        } finally {
+            jdbc.close();
+        }
+    }
+
+    @After
+    public void closePool() {
+        pool.close();
+    }
+
+    private static long count(Jdbc jdbc) {
+        return jdbc.execute(Sql.select("COUNT(*)").from("Numbers"), Long.class).first();
+    }
+
+    private static Connection pooled(Jdbc jdbc) throws Exception {
+        return jdbc.connection.unwrap(Connection.class);
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        Jdbc first = pool.borrow();
+        Connection connection = pooled(first);
+        first.close();
+        first.close();
+        assertEquals(1, pool.size());
+        assertEquals(1, pool.idle());
+
+        Jdbc second = pool.borrow();
+        assertNotSame(first, second);
+        assertSame(connection, pooled(second));
+        assertEquals(0, pool.idle());
+        second.close();
+    }
+
+    @Test
+    public void testRun() {
+        long count = pool.run(new Jdbc.Work<Long>() {
+            public Long run(Jdbc jdbc) {
+                return count(jdbc);
+            }
+        });
+        assertEquals(10, count);
+        assertEquals(1, pool.idle());
+    }
+
+    @Test
+    public void testBorrowTimeout() throws Exception {
+        Jdbc first = pool.borrow();
+        Jdbc second = pool.borrow();
+        assertNotSame(pooled(first), pooled(second));
+        try {
+            pool.borrow();
+            fail("JdbcException expected");
+        } catch (JdbcException e) {
+            assertEquals(2, pool.size());
+        }
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testWaitForConnection() throws Exception {
+        pool.borrowTimeout(5000);
+        final Jdbc first = pool.borrow();
+        Connection connection = pooled(first);
+        Jdbc second = pool.borrow();
+        Thread release = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                }
+                first.close();
+            }
+        };
+        release.start();
+        Jdbc third = pool.borrow();
+        assertSame(connection, pooled(third));
+        release.join();
+        second.close();
+        third.close();
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void testValidation() throws Exception {
+        Jdbc first = pool.borrow();
+        Connection connection = pooled(first);
+        first.close();
+        connection.close();
+
+        Jdbc second = pool.borrow();
+        assertNotSame(connection, pooled(second));
+        assertEquals(1, pool.size());
+        assertEquals(10, count(second));
+        second.close();
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+        pool.idleTimeout(1);
+        Jdbc first = pool.borrow();
+        Connection connection = pooled(first);
+        first.close();
+        Thread.sleep(10);
+
+        Jdbc second = pool.borrow();
+        assertNotSame(connection, pooled(second));
+        assertTrue(connection.isClosed());
+        second.close();
+    }
+
+    @Test
+    public void testRollbackOnRelease() throws Exception {
+        Jdbc first = pool.borrow();
+        first.begin();
+        first.executeUpdate("DELETE FROM Numbers");
+        assertEquals(0, count(first));
+        first.close();
+
+        Jdbc second = pool.borrow();
+        assertTrue(second.connection.getAutoCommit());
+        assertFalse(second.inTransaction());
+        assertEquals(10, count(second));
+        second.close();
+    }
+
+    @Test
+    public void testSettingsNotInherited() throws Exception {
+        Jdbc first = pool.borrow();
+        first.dialect(Sql.Dialect.OFFSET_FETCH).defaultFetchSize(7).streamFetchSize(9).statementCache(2)
+                .defaultResultSetType(ResultSet.TYPE_SCROLL_INSENSITIVE);
+        first.connection.setAutoCommit(false);
+        first.close();
+
+        Jdbc second = pool.borrow();
+        Jdbc fresh = new Jdbc(pooled(second));
+        assertSame(fresh.dialect(), second.dialect());
+        assertEquals(fresh.defaultFetchSize(), second.defaultFetchSize());
+        assertEquals(fresh.streamFetchSize(), second.streamFetchSize());
+        assertEquals(fresh.defaultResultSetType(), second.defaultResultSetType());
+        assertNull(second.statementCache());
+        assertTrue(second.connection.getAutoCommit());
+        second.close();
+    }
+
+    @Test
+    public void testClosedBorrow() throws Exception {
+        Jdbc first = pool.borrow();
+        first.close();
+        Jdbc second = pool.borrow();
+        assertTrue(first.connection.isClosed());
+        assertFalse(second.connection.isClosed());
+        try {
+            count(first);
+            fail("JdbcException expected");
+        } catch (JdbcException e) {
+        }
+        assertEquals(10, count(second));
+        second.close();
+    }
+
+    @Test
+    public void testAutoCommitRestored() throws Exception {
+        pool.close();
+        pool = new JdbcPool(new JdbcDataSource() {
+            {
+                setURL(url);
+            }
+
+            @Override
+            public Connection getConnection() throws SQLException {
+                Connection connection = super.getConnection();
+                connection.setAutoCommit(false);
+                return connection;
+            }
+        });
+        Jdbc first = pool.borrow();
+        assertFalse(first.connection.getAutoCommit());
+        first.connection.setAutoCommit(true);
+        first.close();
+        Jdbc second = pool.borrow();
+        assertFalse(second.connection.getAutoCommit());
+        second.close();
+    }
+
+    @Test
+    public void testStatementCache() {
+        pool.close();
+        pool = new JdbcPool(url).statementCache(4);
+        for (int i = 0; i < 3; i++) {
+            Jdbc jdbc = pool.borrow();
+            assertEquals(10, count(jdbc));
+            assertEquals(i, jdbc.statementCache().hits());
+            jdbc.close();
+        }
+    }
+
+    @Test
+    public void testClose() {
+        Jdbc jdbc = pool.borrow();
+        pool.close();
+        try {
+            pool.borrow();
+            fail("JdbcException expected");
+        } catch (JdbcException e) {
+        }
+        jdbc.close();
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testParallel() {
+        pool.maxSize(3);
+        List<Integer> ids = new JdbcParallel(pool).execute(Sql.select("id").from("Numbers"), "id", 0, 9, 3, Integer.class).list();
+        Collections.sort(ids);
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 10; i++) expected.add(i);
+        assertEquals(expected, ids);
+        assertEquals(pool.size(), pool.idle());
+    }
+
+}
@@ -0,0 +1,154 @@
+package fr.zenexity.dbhelper;
+
+import static org.junit.Assert.*;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class JdbcPublisherTest extends TestingDatabase {
+
+    private static final Executor direct = new Executor() {
+        public void execute(Runnable task) {
+            task.run();
+        }
+    };
+
+    private static class Recorder implements Flow.Subscriber<String> {
+        public final List<String> rows = new ArrayList<String>();
+        public final CountDownLatch finished = new CountDownLatch(1);
+        public Flow.Subscription subscription;
+        public Throwable error;
+        public boolean completed;
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        public void onNext(String row) {
+            rows.add(row);
+        }
+
+        public void onError(Throwable error) {
+            this.error = error;
+            finished.countDown();
+        }
+
+        public void onComplete() {
+            completed = true;
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Count the rows read from the result.
+     */
+    private static class CountingFactory implements JdbcResult.Factory<String> {
+        private final JdbcResult.Factory<String> factory = JdbcResult.primitiveFactory(String.class);
+        public int created;
+
+        public void init(JdbcAdapter adapter, ResultSet result) throws SQLException, JdbcResultException {
+            factory.init(adapter, result);
+        }
+
+        public String create(ResultSet result) throws SQLException, JdbcResultException {
+            created++;
+            return factory.create(result);
+        }
+    }
+
+    private JdbcIterator<String> names(JdbcResult.Factory<String> factory) {
+        return jdbc.execute(Sql.select("distName").from(Entry.class).orderBy("typeOrdinal"), factory);
+    }
+
+    @Test
+    public void testDemand() {
+        CountingFactory factory = new CountingFactory();
+        JdbcIterator<String> it = names(factory);
+        Recorder recorder = new Recorder();
+        it.publisher(direct).subscribe(recorder);
+        assertEquals(0, factory.created);
+
+        recorder.subscription.request(2);
+        assertEquals(Arrays.asList("Debian", "Ubuntu"), recorder.rows);
+        assertEquals(3, factory.created);
+        assertFalse(recorder.completed);
+
+        recorder.subscription.request(10);
+        assertEquals(Arrays.asList("Debian", "Ubuntu", "Fedora", "Mandriva", "Slackware"), recorder.rows);
+        assertTrue(recorder.completed);
+        assertNull(recorder.error);
+        assertNull(it.resultSet());
+    }
+
+    @Test
+    public void testCancel() {
+        JdbcIterator<String> it = names(JdbcResult.primitiveFactory(String.class));
+        Recorder recorder = new Recorder();
+        it.publisher(direct).subscribe(recorder);
+        recorder.subscription.request(1);
+        recorder.subscription.cancel();
+        assertEquals(Arrays.asList("Debian"), recorder.rows);
+        assertNull(it.resultSet());
+        assertFalse(recorder.completed);
+        assertNull(recorder.error);
+        recorder.subscription.request(1);
+        assertEquals(1, recorder.rows.size());
+    }
+
+    @Test
+    public void testInvalidRequest() {
+        JdbcIterator<String> it = names(JdbcResult.primitiveFactory(String.class));
+        Recorder recorder = new Recorder();
+        it.publisher(direct).subscribe(recorder);
+        recorder.subscription.request(0);
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+        assertNull(it.resultSet());
+    }
+
+    @Test
+    public void testSingleSubscriber() {
+        JdbcPublisher<String> publisher = names(JdbcResult.primitiveFactory(String.class)).publisher(direct);
+        publisher.subscribe(new Recorder());
+        Recorder second = new Recorder();
+        publisher.subscribe(second);
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Recorder recorder = new Recorder() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    super.onSubscribe(subscription);
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(String row) {
+                    super.onNext(row);
+                    subscription.request(1);
+                }
+            };
+            names(JdbcResult.primitiveFactory(String.class)).publisher(executor).subscribe(recorder);
+            assertTrue(recorder.finished.await(5, TimeUnit.SECONDS));
+            assertTrue(recorder.completed);
+            assertEquals(5, recorder.rows.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
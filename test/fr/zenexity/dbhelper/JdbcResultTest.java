@@ -3,7 +3,9 @@ package fr.zenexity.dbhelper;
 import static org.junit.Assert.*;
 
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -680,6 +682,279 @@ public class JdbcResultTest extends TestingDatabase {
         public transient String version;
     }
 
+    @Test
+    public void testTypedColumns() {
+        Sql.Select query = Sql.select("typeOrdinal", "CAST(NULL AS INT)").from(Entry.class).orderBy("typeOrdinal");
+        assertEquals(Integer.valueOf(2), jdbc.execute(query, Integer.class).list().get(2));
+        assertNull(jdbc.execute(query, JdbcResult.primitiveFactory(Integer.class, 2)).first());
+
+        List<Integer> row = jdbc.execute(query, JdbcResult.listFactory(Integer.class)).list().get(3);
+        assertEquals(Integer.valueOf(3), row.get(0));
+        assertNull(row.get(1));
+    }
+
+    @Test
+    public void testTypedColumnsCastErrors() {
+        Sql.Select query = Sql.select("typeOrdinal").from(Entry.class);
+        Class<?>[] types = { Long.class, Float.class, Double.class, Short.class };
+        for (Class<?> type : types) {
+            try {
+                jdbc.execute(query, JdbcResult.primitiveFactory(type, 1)).first();
+                fail("JdbcIteratorException expected for "+ type.getName());
+            } catch (JdbcIteratorException e) {
+                assertEquals(JdbcResultException.class, e.getCause().getClass());
+                assertEquals(JdbcAdapterException.class, e.getCause().getCause().getClass());
+                assertEquals(ClassCastException.class, e.getCause().getCause().getCause().getClass());
+            }
+        }
+        try {
+            jdbc.execute(query, JdbcResult.arrayFactory(Long.class)).first();
+            fail("JdbcIteratorException expected");
+        } catch (JdbcIteratorException e) {
+            assertEquals("Array[0]", e.getCause().getMessage());
+            assertEquals(ClassCastException.class, e.getCause().getCause().getCause().getClass());
+        }
+    }
+
+    @Test
+    public void testTypedColumnsBigint() {
+        long big = 9007199254740993L;
+        Sql.Select query = Sql.select("CAST("+ big +" AS BIGINT)").from(Entry.class);
+        assertEquals(Long.valueOf(big), jdbc.execute(query, Long.class).first());
+        try {
+            jdbc.execute(query, Double.class).first();
+            fail("JdbcIteratorException expected");
+        } catch (JdbcIteratorException e) {
+            assertEquals(ClassCastException.class, e.getCause().getCause().getCause().getClass());
+        }
+    }
+
+    /**
+     * Add 100 to the integers, upper case the strings and cast null strings
+     * to "NULL".
+     */
+    static JdbcAdapter shiftingAdapter() {
+        return JdbcAdapter.defaultBuilder()
+            .register(new JdbcAdapter.Caster() {
+                public int priority() { return 10; }
+
+                @SuppressWarnings("unchecked")
+                public <T> T cast(Class<T> clazz, Object value) {
+                    if (value instanceof Integer && (clazz == int.class || clazz == Integer.class)) return (T) Integer.valueOf((Integer) value + 100);
+                    if (value instanceof String && clazz == String.class) return (T) ((String) value).toUpperCase();
+                    if (value == null && clazz == String.class) return (T) "NULL";
+                    return null;
+                }
+            })
+            .register(new JdbcAdapter.SqlDecoder() {
+                public int priority() { return 10; }
+
+                public Object normalize(Object value) {
+                    return value instanceof Integer ? Integer.valueOf((Integer) value + 100) : null;
+                }
+            })
+            .create();
+    }
+
+    @Test
+    public void testTypedColumnsCustomCaster() throws SQLException {
+        ResultSet result = jdbc.connection.createStatement().executeQuery("SELECT typeOrdinal, distName FROM Entry");
+        try {
+            ResultSetMetaData meta = result.getMetaData();
+            assertEquals(int.class, JdbcResult.typedColumn(jdbc.adapter, meta, 1, int.class));
+            assertEquals(int.class, JdbcResult.typedColumn(jdbc.adapter, meta, 1, Integer.class));
+            assertEquals(String.class, JdbcResult.typedColumn(jdbc.adapter, meta, 2, String.class));
+            assertNull(JdbcResult.typedColumn(jdbc.adapter, meta, 1, long.class));
+            assertNull(JdbcResult.typedColumn(shiftingAdapter(), meta, 1, int.class));
+            assertNull(JdbcResult.typedColumn(shiftingAdapter(), meta, 2, String.class));
+        } finally {
+            result.close();
+        }
+
+        Jdbc custom = new Jdbc(jdbc.connection, shiftingAdapter());
+        Sql.Select query = Sql.select("distName", "typeOrdinal", "typeOrdinal AS ordinal").from(Entry.class).orderBy("typeOrdinal");
+        assertEquals("UBUNTU", custom.execute(query, JdbcResult.primitiveFactory(String.class, 1)).list().get(1));
+        assertEquals(Integer.valueOf(101), custom.execute(query, JdbcResult.primitiveFactory(Integer.class, 2)).list().get(1));
+        assertEquals(Integer.valueOf(101), custom.execute(query, JdbcResult.primitiveFactory(int.class, 2)).list().get(1));
+        assertEquals(Arrays.asList(101, 101), custom.execute(query, JdbcResult.listFactory(Integer.class, "typeOrdinal", "ordinal")).list().get(1));
+        assertArrayEquals(new String[] { "UBUNTU" }, custom.execute(query, JdbcResult.arrayFactory(String.class, "distName")).list().get(1));
+        assertEquals(101, custom.execute(query, JdbcResult.mapFactory()).list().get(1).get("typeOrdinal"));
+
+        CompiledPrimitiveEntry entry = custom.execute(query, JdbcResult.classFactory(CompiledPrimitiveEntry.class, "distName", "ordinal")).list().get(1);
+        assertEquals("UBUNTU", entry.distName);
+        assertEquals(101, entry.ordinal);
+
+        entry = jdbc.execute(query, JdbcResult.classFactory(CompiledPrimitiveEntry.class, "distName", "ordinal")).list().get(1);
+        assertEquals("Ubuntu", entry.distName);
+        assertEquals(1, entry.ordinal);
+        assertEquals(1, jdbc.execute(query, JdbcResult.mapFactory()).list().get(1).get("typeOrdinal"));
+    }
+
+    @Test
+    public void testClassFactoryTypedColumns() {
+        Sql.Select query = Sql.select("distName", "num", "typeOrdinal AS ordinal", "typeOrdinal AS bigOrdinal").from(Entry.class).orderBy("typeOrdinal");
+        List<CompiledPrimitiveEntry> entries = jdbc.execute(query, JdbcResult.classFactory(CompiledPrimitiveEntry.class)).list();
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(i, entries.get(i).ordinal);
+            assertEquals(i, entries.get(i).bigOrdinal);
+        }
+        assertEquals(5.0, entries.get(0).num, 0);
+
+        try {
+            query = Sql.select("distName", "CAST(NULL AS INT) AS ordinal").from(Entry.class);
+            jdbc.execute(query, JdbcResult.classFactory(CompiledPrimitiveEntry.class, "distName", "ordinal")).first();
+            fail("JdbcIteratorException expected");
+        } catch (JdbcIteratorException e) {
+            assertEquals("ordinal[2]", e.getCause().getMessage());
+            assertEquals(IllegalArgumentException.class, e.getCause().getCause().getClass());
+        }
+    }
+
+    @Test
+    public void testClassFactoryMappingCache() {
+        Sql.Select query = Sql.select("distName", "version").from(Entry.class);
+        JdbcResult.ClassFactory<Entry> first = JdbcResult.classFactory(Entry.class);
+        JdbcResult.ClassFactory<Entry> second = JdbcResult.classFactory(Entry.class);
+        JdbcResult.ClassFactory<Entry> other = JdbcResult.classFactory(Entry.class, "distName");
+        assertEquals(5, jdbc.execute(query, first).list().size());
+        assertEquals(5, jdbc.execute(query, second).list().size());
+        assertEquals("Debian", jdbc.execute(query, other).first().distName);
+        assertSame(first.columns, second.columns);
+        assertNotSame(first.columns, other.columns);
+        assertEquals(1, other.columns.size());
+
+        Entry entry = jdbc.execute(Sql.select("version AS distName").from(Entry.class), second).first();
+        assertNotSame(first.columns, second.columns);
+        assertEquals("5.0", entry.distName);
+    }
+
+    @Test
+    public void testClassFactoryClearMappings() {
+        Sql.Select query = Sql.select("distName", "version").from(Entry.class);
+        JdbcResult.ClassFactory<Entry> first = JdbcResult.classFactory(Entry.class);
+        JdbcResult.ClassFactory<Entry> second = JdbcResult.classFactory(Entry.class);
+        jdbc.execute(query, first).list();
+        JdbcResult.ClassFactory.clearMappings();
+        assertEquals(5, jdbc.execute(query, second).list().size());
+        assertNotSame(first.columns, second.columns);
+        assertEquals(first.columns.size(), second.columns.size());
+    }
+
+    @Test
+    public void testCompiledClassFactorySelectAll() {
+        Map<String, Entry.DistType> linux = new HashMap<String, Entry.DistType>();
+        linux.put("Debian", Entry.DistType.DEBIAN);
+        linux.put("Ubuntu", Entry.DistType.UBUNTU);
+        linux.put("Fedora", Entry.DistType.FEDORA);
+        linux.put("Mandriva", Entry.DistType.MANDRIVA);
+        linux.put("Slackware", Entry.DistType.SLACKWARE);
+
+        Sql.Select query = Sql.select("*").from(Entry.class);
+
+        JdbcResult.CompiledClassFactory<Entry> factory = JdbcResult.compiledClassFactory(Entry.class);
+        for (Entry entry : jdbc.execute(query, factory)) {
+            assertEquals(linux.get(entry.distName), entry.typeName);
+            assertEquals(linux.get(entry.distName), entry.typeOrdinal);
+            assertNotNull(entry.version);
+            linux.remove(entry.distName);
+        }
+
+        assertTrue(factory.compiled());
+        assertEquals(0, linux.size());
+    }
+
+    @Test
+    public void testCompiledClassFactoryPrimitive() {
+        Sql.Select query = Sql.select("distName", "num", "typeOrdinal AS ordinal", "typeOrdinal AS bigOrdinal").from(Entry.class).orderBy("typeOrdinal");
+        List<CompiledPrimitiveEntry> entries = jdbc.execute(query, JdbcResult.compiledClassFactory(CompiledPrimitiveEntry.class)).list();
+        assertEquals(5, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(i, entries.get(i).ordinal);
+            assertEquals(i, entries.get(i).bigOrdinal);
+        }
+        assertEquals("Debian", entries.get(0).distName);
+        assertEquals(5.0, entries.get(0).num, 0);
+    }
+
+    @Test
+    public void testCompiledClassFactoryNullPrimitive() {
+        try {
+            Sql.Select query = Sql.select("distName", "CAST(NULL AS INT) AS ordinal").from(Entry.class);
+            jdbc.execute(query, JdbcResult.compiledClassFactory(CompiledPrimitiveEntry.class, "distName", "ordinal")).first();
+            fail("JdbcIteratorException expected");
+        } catch (JdbcIteratorException e) {
+            assertEquals(JdbcResultException.class, e.getCause().getClass());
+            assertEquals("ordinal[2]", e.getCause().getMessage());
+            assertEquals(IllegalArgumentException.class, e.getCause().getCause().getClass());
+        }
+    }
+
+    @Test
+    public void testCompiledClassFactorySameAsClassFactory() {
+        Sql.Select query = Sql.select("distName", "num", "typeOrdinal AS ordinal", "typeOrdinal AS bigOrdinal").from(Entry.class).orderBy("typeOrdinal");
+        Sql.Select nulls = Sql.select("CAST(NULL AS VARCHAR(10)) AS distName", "typeOrdinal AS ordinal").from(Entry.class).orderBy("typeOrdinal");
+        for (JdbcAdapter adapter : new JdbcAdapter[] { jdbc.adapter, shiftingAdapter() }) {
+            Jdbc db = new Jdbc(jdbc.connection, adapter);
+            for (Sql.Select select : new Sql.Select[] { query, nulls }) {
+                List<CompiledPrimitiveEntry> expected = db.execute(select, JdbcResult.classFactory(CompiledPrimitiveEntry.class)).list();
+                JdbcResult.CompiledClassFactory<CompiledPrimitiveEntry> factory = JdbcResult.compiledClassFactory(CompiledPrimitiveEntry.class);
+                List<CompiledPrimitiveEntry> entries = db.execute(select, factory).list();
+                assertTrue(factory.compiled());
+                assertEquals(expected.size(), entries.size());
+                for (int i = 0; i < entries.size(); i++) {
+                    assertEquals(expected.get(i).distName, entries.get(i).distName);
+                    assertEquals(expected.get(i).num, entries.get(i).num, 0);
+                    assertEquals(expected.get(i).ordinal, entries.get(i).ordinal);
+                    assertEquals(expected.get(i).bigOrdinal, entries.get(i).bigOrdinal);
+                }
+            }
+        }
+
+        Jdbc custom = new Jdbc(jdbc.connection, shiftingAdapter());
+        CompiledPrimitiveEntry entry = custom.execute(query, JdbcResult.compiledClassFactory(CompiledPrimitiveEntry.class)).list().get(1);
+        assertEquals("UBUNTU", entry.distName);
+        assertEquals(101, entry.ordinal);
+        assertEquals("NULL", custom.execute(nulls, JdbcResult.compiledClassFactory(CompiledPrimitiveEntry.class)).first().distName);
+        assertNull(jdbc.execute(nulls, JdbcResult.compiledClassFactory(CompiledPrimitiveEntry.class)).first().distName);
+    }
+
+    @Test
+    public void testCompiledClassFactoryWithCastError() {
+        try {
+            Sql.Select query = Sql.select("num").from(Entry.class);
+            jdbc.execute(query, JdbcResult.compiledClassFactory(BadCastedEntry.class)).first();
+            fail("JdbcIteratorException expected");
+        } catch (JdbcIteratorException e) {
+            assertEquals(JdbcResultException.class, e.getCause().getClass());
+            assertEquals("num[1]", e.getCause().getMessage());
+            assertEquals(JdbcAdapterException.class, e.getCause().getCause().getClass());
+            assertEquals("5.0 (java.lang.Double) to java.lang.Float", e.getCause().getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testCompiledClassFactoryFallback() {
+        Sql.Select query = Sql.select("distName", "version").from(Entry.class).where("distName=?", "Debian");
+        JdbcResult.CompiledClassFactory<HiddenEntry> factory = JdbcResult.compiledClassFactory(HiddenEntry.class);
+        HiddenEntry entry = jdbc.execute(query, factory).first();
+        assertEquals("5.0", entry.version);
+        assertFalse(factory.compiled());
+    }
+
+    public static class CompiledPrimitiveEntry {
+        public String distName;
+        public double num;
+        public int ordinal;
+        public long bigOrdinal;
+    }
+
+    public static class HiddenEntry {
+        public String distName;
+        public String version;
+        HiddenEntry() {
+        }
+    }
+
     public static class PrimitiveEntry {
         public String distName;
         public double num;
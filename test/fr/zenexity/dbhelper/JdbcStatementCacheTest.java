@@ -0,0 +1,141 @@
+package fr.zenexity.dbhelper;
+
+import static org.junit.Assert.*;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class JdbcStatementCacheTest extends TestingDatabase {
+
+    @Before
+    public void enableCache() {
+        jdbc.statementCache(2);
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        JdbcStatementCache cache = jdbc.statementCache();
+        Sql.Select query = Sql.select("distName").from(Entry.class).where("distName=?", "Debian");
+
+        assertEquals("Debian", jdbc.execute(query, String.class).first());
+        assertEquals(0, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.size());
+
+        assertEquals("Debian", jdbc.execute(query, String.class).first());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testUpdateQuery() {
+        JdbcStatementCache cache = jdbc.statementCache();
+        assertEquals(1, jdbc.execute(Sql.update(Entry.class).set("version", "5.1").where("distName=?", "Debian")));
+        assertEquals(1, jdbc.execute(Sql.update(Entry.class).set("version", "9.11").where("distName=?", "Ubuntu")));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals("9.11", jdbc.execute(Sql.select("version").from(Entry.class).where("distName=?", "Ubuntu"), String.class).first());
+    }
+
+    @Test
+    public void testEviction() {
+        JdbcStatementCache cache = jdbc.statementCache();
+        PreparedStatement first = cache.prepareQuery("SELECT 1 FROM Entry", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement second = cache.prepareQuery("SELECT 2 FROM Entry", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement third = cache.prepareQuery("SELECT 3 FROM Entry", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try {
+            first.close();
+            second.close();
+            third.close();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+
+        cache.prepareQuery("SELECT 1 FROM Entry", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        assertEquals(0, cache.hits());
+        cache.prepareQuery("SELECT 3 FROM Entry", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void testKeyedByResultSetType() {
+        JdbcStatementCache cache = jdbc.statementCache();
+        Sql.Select query = Sql.select("distName").from(Entry.class);
+        jdbc.newStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY).close();
+        jdbc.newStatement(query, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).close();
+        assertEquals(0, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testClosedHandle() throws Exception {
+        JdbcStatementCache cache = jdbc.statementCache();
+        PreparedStatement statement = cache.prepareUpdate("UPDATE Entry SET version=? WHERE distName=?");
+        statement.close();
+        assertTrue(statement.isClosed());
+        try {
+            statement.executeUpdate();
+            fail("SQLException expected");
+        } catch (java.sql.SQLException e) {
+            assertEquals("Statement closed", e.getMessage());
+        }
+        assertFalse(cache.prepareUpdate("UPDATE Entry SET version=? WHERE distName=?").isClosed());
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void testTemplate() {
+        JdbcStatementCache cache = jdbc.statementCache();
+        Sql.CompiledQuery template = Sql.select("distName").from(Entry.class)
+                .where("typeOrdinal>=?", Sql.param("min")).andWhere("typeOrdinal<=?", Sql.param("max")).orderBy("typeOrdinal").compile();
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("min", 1);
+        values.put("max", 2);
+        assertEquals(Arrays.asList("Ubuntu", "Fedora"), jdbc.execute(template.bind(values), String.class).list());
+        values.put("min", 3);
+        values.put("max", 3);
+        assertEquals(Arrays.asList("Mandriva"), jdbc.execute(template.bind(values), String.class).list());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test(expected=JdbcStatementException.class)
+    public void testUnboundTemplate() {
+        jdbc.execute(Sql.select("distName").from(Entry.class).where("typeOrdinal=?", Sql.param("type")).compile(), String.class).list();
+    }
+
+    @Test
+    public void testWhereIn() {
+        JdbcStatementCache cache = jdbc.statementCache();
+        Sql.Select query = Sql.select("distName").from(Entry.class).where(Sql.Where.in("typeOrdinal", 0, 2, 4)).orderBy("typeOrdinal");
+        assertEquals(Arrays.asList("Debian", "Fedora", "Slackware"), jdbc.execute(query, String.class).list());
+        query = Sql.select("distName").from(Entry.class).where(Sql.Where.in("typeOrdinal", 1, 2, 3, 4)).orderBy("typeOrdinal");
+        assertEquals(Arrays.asList("Ubuntu", "Fedora", "Mandriva", "Slackware"), jdbc.execute(query, String.class).list());
+        assertEquals(1, cache.hits());
+        assertEquals(0, jdbc.execute(Sql.select("distName").from(Entry.class).where(Sql.Where.in("typeOrdinal", Arrays.asList())), String.class).list().size());
+        List<Integer> ordinals = new ArrayList<Integer>();
+        for (int i = 300; i >= 0; i--) ordinals.add(i);
+        query = Sql.select("distName").from(Entry.class).where(Sql.Where.in("typeOrdinal", ordinals)).andWhere("distName<>?", "Debian");
+        assertEquals(4, jdbc.execute(query, String.class).list().size());
+    }
+
+    @Test
+    public void testDisable() {
+        jdbc.statementCache(0);
+        assertNull(jdbc.statementCache());
+        assertEquals("Debian", jdbc.execute(Sql.select("distName").from(Entry.class).where("distName=?", "Debian"), String.class).first());
+    }
+
+}
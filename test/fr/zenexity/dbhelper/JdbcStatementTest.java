@@ -0,0 +1,52 @@
+package fr.zenexity.dbhelper;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class JdbcStatementTest {
+
+    /**
+     * Record the calls made to JDBC interfaces, answering with proxies.
+     */
+    private static class Recorder implements InvocationHandler {
+        public final List<String> calls = new ArrayList<String>();
+
+        @SuppressWarnings("unchecked")
+        public <T> T proxy(Class<T> type) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, this);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) return method.invoke(this, args);
+            calls.add(method.getName() + (args == null ? "[]" : Arrays.deepToString(args)));
+            if (method.getName().equals("getConnection")) return proxy(Connection.class);
+            if (method.getName().equals("createArrayOf")) return proxy(Array.class);
+            return null;
+        }
+    }
+
+    @Test
+    public void testArrayParam() {
+        Recorder recorder = new Recorder();
+        JdbcStatement qs = new JdbcStatement(recorder.proxy(PreparedStatement.class), JdbcAdapter.defaultAdapter);
+        Sql.Select query = Sql.select("*").from("Entry").where("distName=?", "Debian").andWhere(Sql.Where.any("typeOrdinal", "integer", 1, 2));
+        qs.paramsList(query.params());
+        assertEquals(4, recorder.calls.size());
+        assertEquals("setObject[1, Debian]", recorder.calls.get(0));
+        assertEquals("getConnection[]", recorder.calls.get(1));
+        assertEquals("createArrayOf[integer, [1, 2]]", recorder.calls.get(2));
+        assertTrue(recorder.calls.get(3).startsWith("setArray[2, "));
+    }
+
+}
@@ -0,0 +1,184 @@
+package fr.zenexity.dbhelper;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class JdbcTransactionTest extends TestingDatabase {
+
+    private int count() {
+        return count(jdbc);
+    }
+
+    @Test
+    public void testCommit() throws Exception {
+        assertFalse(jdbc.inTransaction());
+        jdbc.begin();
+        assertTrue(jdbc.inTransaction());
+        assertFalse(jdbc.connection.getAutoCommit());
+        jdbc.execute(Sql.delete(Entry.class).where("distName=?", "Debian"));
+        jdbc.commit();
+        assertFalse(jdbc.inTransaction());
+        assertTrue(jdbc.connection.getAutoCommit());
+        assertEquals(4, count());
+    }
+
+    @Test
+    public void testRollback() throws Exception {
+        jdbc.begin();
+        jdbc.execute(Sql.delete(Entry.class));
+        assertEquals(0, count());
+        jdbc.rollback();
+        assertTrue(jdbc.connection.getAutoCommit());
+        assertEquals(5, count());
+    }
+
+    @Test
+    public void testSavepoints() {
+        jdbc.begin();
+        jdbc.execute(Sql.delete(Entry.class).where("distName=?", "Debian"));
+        jdbc.begin();
+        jdbc.execute(Sql.delete(Entry.class).where("distName=?", "Ubuntu"));
+        jdbc.rollback();
+        assertTrue(jdbc.inTransaction());
+        assertEquals(4, count());
+        jdbc.begin();
+        jdbc.execute(Sql.delete(Entry.class).where("distName=?", "Fedora"));
+        jdbc.commit();
+        jdbc.commit();
+        assertFalse(jdbc.inTransaction());
+        assertEquals(3, count());
+    }
+
+    @Test
+    public void testRepeatedNestedRollbacks() {
+        final List<Savepoint> rolledBack = new ArrayList<Savepoint>();
+        final List<Savepoint> released = new ArrayList<Savepoint>();
+        final Connection connection = jdbc.connection;
+        Connection tracked = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Connection.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("rollback") && args != null) rolledBack.add((Savepoint) args[0]);
+                if (method.getName().equals("releaseSavepoint")) released.add((Savepoint) args[0]);
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        });
+        Jdbc nested = new Jdbc(tracked);
+        nested.begin();
+        nested.execute(Sql.delete(Entry.class).where("distName=?", "Debian"));
+        for (int i = 0; i < 100; i++) {
+            nested.begin();
+            nested.execute(Sql.delete(Entry.class));
+            assertEquals(0, count(nested));
+            nested.rollback();
+            assertEquals(4, count(nested));
+        }
+        nested.commit();
+        assertFalse(nested.inTransaction());
+        assertEquals(4, count());
+        assertEquals(100, rolledBack.size());
+        assertEquals(rolledBack, released);
+    }
+
+    private static int count(Jdbc jdbc) {
+        return jdbc.execute(Sql.select("COUNT(*)").from(Entry.class), Number.class).first().intValue();
+    }
+
+    @Test
+    public void testInTransaction() {
+        int deleted = jdbc.inTransaction(new Jdbc.Work<Integer>() {
+            public Integer run(Jdbc jdbc) {
+                return jdbc.execute(Sql.delete(Entry.class).where("typeOrdinal<?", 2));
+            }
+        });
+        assertEquals(2, deleted);
+        assertEquals(3, count());
+
+        try {
+            jdbc.inTransaction(new Jdbc.Work<Void>() {
+                public Void run(Jdbc jdbc) {
+                    jdbc.execute(Sql.delete(Entry.class));
+                    jdbc.execute(Sql.delete("UnknownTable"));
+                    return null;
+                }
+            });
+            fail("JdbcStatementException expected");
+        } catch (JdbcStatementException e) {
+        }
+        assertFalse(jdbc.inTransaction());
+        assertEquals(3, count());
+    }
+
+    @Test
+    public void testNestedInTransaction() {
+        jdbc.inTransaction(new Jdbc.Work<Void>() {
+            public Void run(Jdbc jdbc) {
+                jdbc.execute(Sql.delete(Entry.class).where("distName=?", "Debian"));
+                try {
+                    jdbc.inTransaction(new Jdbc.Work<Void>() {
+                        public Void run(Jdbc jdbc) {
+                            jdbc.execute(Sql.delete(Entry.class));
+                            throw new IllegalStateException();
+                        }
+                    });
+                } catch (IllegalStateException e) {
+                }
+                return null;
+            }
+        });
+        assertEquals(4, count());
+    }
+
+    @Test
+    public void testRollbackErrorKeepsWorkError() {
+        try {
+            jdbc.inTransaction(new Jdbc.Work<Void>() {
+                public Void run(Jdbc jdbc) {
+                    try {
+                        jdbc.connection.close();
+                    } catch (SQLException e) {
+                        throw new JdbcException(e);
+                    }
+                    throw new IllegalStateException("work");
+                }
+            });
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertEquals("work", e.getMessage());
+            assertEquals(1, e.getSuppressed().length);
+            assertTrue(e.getSuppressed()[0] instanceof JdbcException);
+        }
+        assertFalse(jdbc.inTransaction());
+    }
+
+    @Test
+    public void testBatchInTransaction() {
+        jdbc.begin();
+        SqlScript script = new SqlScript();
+        for (int i = 0; i < 4; i++) script.add("INSERT INTO Entry (distName) VALUES ('Dist"+ i +"')");
+        jdbc.executeBatch(script, 100, 2);
+        assertTrue(jdbc.inTransaction());
+        assertEquals(9, count());
+        jdbc.rollback();
+        assertEquals(5, count());
+    }
+
+    @Test(expected=JdbcException.class)
+    public void testCommitWithoutTransaction() {
+        jdbc.commit();
+    }
+
+}
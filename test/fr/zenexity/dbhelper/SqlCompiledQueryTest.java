@@ -0,0 +1,98 @@
+package fr.zenexity.dbhelper;
+
+import static fr.zenexity.dbhelper.SqlTest.assertQuery;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author yma
+ */
+public class SqlCompiledQueryTest {
+
+    @Test
+    public void testCompile() {
+        Sql.Select select = Sql.select("x").from("t").where("y=?", 1).andWhere("z=?", 2);
+        Sql.CompiledQuery query = select.compile();
+        assertQuery(query, "SELECT x FROM t WHERE y=? AND z=?", 1, 2);
+        assertEquals(2, query.slots());
+        assertSame(query.params(), query.params());
+
+        select.andWhere("w=?", 3);
+        assertQuery(query, "SELECT x FROM t WHERE y=? AND z=?", 1, 2);
+        assertQuery(Sql.union(Sql.select("x").where("y=?", 1)).compile(), "(SELECT x WHERE y=?)", 1);
+    }
+
+    @Test
+    public void testBind() {
+        Sql.CompiledQuery query = Sql.compile(Sql.select("x").from("t").where("y=?", 1).andWhere("z=?", 2));
+        Sql.CompiledQuery bound = query.bind(3, 4);
+        assertQuery(bound, "SELECT x FROM t WHERE y=? AND z=?", 3, 4);
+        assertSame(query.query, bound.query);
+        assertQuery(query, "SELECT x FROM t WHERE y=? AND z=?", 1, 2);
+        assertQuery(query.set(1, 5), "SELECT x FROM t WHERE y=? AND z=?", 1, 5);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBindWrongCount() {
+        Sql.select("x").where("y=?", 1).compile().bind(1, 2);
+    }
+
+    @Test(expected=UnsupportedOperationException.class)
+    public void testImmutableParams() {
+        Sql.CompiledQuery query = Sql.select("x").where("y=?", 1).compile();
+        query.copyParams().add(2);
+        assertEquals(1, query.slots());
+        ((List<Object>) query.params()).add(2);
+    }
+
+    @Test
+    public void testNamedParams() {
+        Sql.CompiledQuery template = Sql.select("x").from("t")
+                .where("a=?", Sql.param("id")).andWhere("b=?", 2).orWhere("c=?", Sql.param("id")).compile();
+        assertEquals(new HashSet<String>(Arrays.asList("id")), template.names());
+        assertQuery(template, "SELECT x FROM t WHERE a=? AND b=? OR c=?", Sql.param("id"), 2, Sql.param("id"));
+
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("id", 7);
+        Sql.CompiledQuery bound = template.bind(values);
+        assertQuery(bound, "SELECT x FROM t WHERE a=? AND b=? OR c=?", 7, 2, 7);
+        assertEquals(template.names(), bound.names());
+        values.put("id", 8);
+        assertQuery(bound.bind(values), "SELECT x FROM t WHERE a=? AND b=? OR c=?", 8, 2, 8);
+        assertQuery(template, "SELECT x FROM t WHERE a=? AND b=? OR c=?", Sql.param("id"), 2, Sql.param("id"));
+
+        Map<String, Object> update = new HashMap<String, Object>();
+        update.put("version", "1.0");
+        assertQuery(Sql.update("x").set("version", Sql.param("version")).where("y=?", 1).compile().bind(update), "UPDATE x SET version=? WHERE y=?", "1.0", 1);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testUnboundParam() {
+        Sql.select("x").where("a=?", Sql.param("a")).andWhere("b=?", Sql.param("b")).compile().bind(Collections.singletonMap("a", 1));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testUnknownParam() {
+        Sql.select("x").where("a=?", Sql.param("a")).compile().bind(Collections.singletonMap("b", 1));
+    }
+
+    @Test
+    public void testCompileUpdate() {
+        Sql.CompiledUpdateQuery insert = Sql.insert("x").set("y", 1).compile();
+        assertQuery(insert, "INSERT INTO x (y) VALUES (?)", 1);
+        assertQuery(insert.bind(2), "INSERT INTO x (y) VALUES (?)", 2);
+        assertQuery(Sql.update("x").set("y", 1).where("z=?", 2).compile().bind(3, 4), "UPDATE x SET y=? WHERE z=?", 3, 4);
+        assertQuery(Sql.delete("x").where("z=?", 2).compile().bind(5), "DELETE FROM x WHERE z=?", 5);
+        assertEquals(1, Sql.compile(Sql.delete("x").where("z=?", 2)).slots());
+    }
+
+}
@@ -1,9 +1,13 @@
 package fr.zenexity.dbhelper;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import org.junit.Test;
@@ -56,4 +60,127 @@ public class SqlScriptTest {
         assertEquals(Arrays.asList("H\303\251lo"), SqlScript.loadScript(new ByteArrayInputStream(script.getBytes()), "ISO-8859-1"));
     }
 
+    @Test
+    public void testLoadScriptQuotesAndComments() {
+        assertEquals(Arrays.asList("A 'x", "y'", "B"), SqlScript.loadScript("A 'x;y'; B"));
+        assertEquals(Arrays.asList("A /*", "*/ B"), SqlScript.loadScript("A /*;*/ B"));
+        assertEquals(Arrays.asList("A", "-- end"), SqlScript.loadScript("A; -- end"));
+    }
+
+    private static List<String> streamed(String script, String delimiter) {
+        return commands(SqlScript.stream(new StringReader(script), delimiter));
+    }
+
+    @Test
+    public void testStreamQuotes() {
+        assertEquals(Arrays.asList("A 'x;y'", "B \"x;y\"", "C 'it''s;' 'a\\';b'"),
+                streamed("A 'x;y'; B \"x;y\"; C 'it''s;' 'a\\';b';", null));
+    }
+
+    @Test
+    public void testStreamComments() {
+        assertEquals(Arrays.asList("-- first; command\nA", "B /* ; */ - 1", "C/**/", "D"),
+                streamed("-- first; command\nA; B /* ; */ - 1;\n C/**/;D;", null));
+        assertEquals(Arrays.asList("A", "B"), streamed("A; -- end\n; B; /* end; */", null));
+        assertEquals(Arrays.asList("A -", "/ B"), streamed("A -; / B; -- end -\n", null));
+    }
+
+    @Test
+    public void testStreamDelimiter() {
+        assertEquals(Arrays.asList("A; B", "C"), streamed("A; B\nGO\nC\nGO", "GO"));
+        assertEquals(Arrays.asList("A 'GO'", "B"), streamed("A 'GO'GO BGO", "GO"));
+    }
+
+    @Test
+    public void testScriptReader() {
+        SqlScriptReader reader = new SqlScriptReader(new StringReader("A;B;C"));
+        assertTrue(reader.hasNext());
+        assertEquals("A", reader.next());
+        assertEquals("B", reader.next());
+        assertTrue(reader.hasNext());
+        assertEquals("C", reader.next());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void testStreamScript() {
+        final int[] reads = new int[1];
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) text.append("INSERT ").append(i).append(";\n");
+        SqlScript script = SqlScript.stream(new StringReader(text.toString()) {
+            @Override
+            public int read(char[] cbuf) throws IOException {
+                reads[0]++;
+                return super.read(cbuf);
+            }
+        });
+        script.add("END");
+
+        Iterator<Sql.FinalUpdateQuery> it = script.iterator();
+        assertEquals("INSERT 0", it.next().toString());
+        assertEquals(1, reads[0]);
+        int count = 1;
+        while (it.hasNext()) {
+            Sql.FinalUpdateQuery query = it.next();
+            if (count < 5000) assertEquals("INSERT "+ count, query.toString());
+            else assertEquals("END", query.toString());
+            count++;
+        }
+        assertEquals(5001, count);
+        assertTrue(reads[0] > 1);
+    }
+
+    @Test
+    public void testBlank() {
+        assertTrue(SqlScriptReader.blank(""));
+        assertTrue(SqlScriptReader.blank(" \n "));
+        assertTrue(SqlScriptReader.blank("-- comment"));
+        assertTrue(SqlScriptReader.blank("/* a */ -- b\n /**/"));
+        assertFalse(SqlScriptReader.blank("-"));
+        assertFalse(SqlScriptReader.blank("/* a */ /"));
+        assertFalse(SqlScriptReader.blank("''"));
+        assertFalse(SqlScriptReader.blank("-- a\nb"));
+    }
+
+    private static File scriptFile(String script, String encoding) throws IOException {
+        File file = File.createTempFile("dbhelper", ".sql");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(script.getBytes(encoding));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static List<String> commands(SqlScript script) {
+        List<String> commands = new ArrayList<String>();
+        for (Sql.FinalUpdateQuery query : script) commands.add(query.toString());
+        return commands;
+    }
+
+    @Test
+    public void testMapScript() throws IOException {
+        String script = " A 'x;y';\n-- comment;\nB /* ; */ 'h\u00e9';;  -- end";
+        List<String> expected = Arrays.asList("A 'x;y'", "-- comment;\nB /* ; */ 'h\u00e9'");
+        assertEquals(expected, streamed(script, null));
+
+        SqlScript mapped = SqlScript.map(scriptFile(script, "UTF-8"), "UTF-8");
+        assertEquals(expected, commands(mapped));
+        assertEquals(expected, commands(mapped));
+        assertEquals(expected, commands(SqlScript.map(scriptFile(script, "ISO-8859-1"), "ISO-8859-1")));
+        assertEquals(expected, commands(SqlScript.map(scriptFile(script, "UTF-16"), "UTF-16")));
+        assertEquals(Arrays.asList("A", "B"), commands(SqlScript.map(scriptFile("A\nGO\nB", "UTF-8"), "UTF-8", "GO")));
+        assertEquals(Arrays.<String>asList(), commands(SqlScript.map(scriptFile("", "UTF-8"), "UTF-8")));
+    }
+
+    @Test
+    public void testMappingSupports() {
+        assertTrue(SqlScriptMapping.supports(java.nio.charset.Charset.forName("UTF-8")));
+        assertTrue(SqlScriptMapping.supports(java.nio.charset.Charset.forName("ISO-8859-15")));
+        assertTrue(SqlScriptMapping.supports(java.nio.charset.Charset.forName("windows-1252")));
+        assertFalse(SqlScriptMapping.supports(java.nio.charset.Charset.forName("UTF-16")));
+    }
+
 }
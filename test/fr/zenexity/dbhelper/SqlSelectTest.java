@@ -25,6 +25,28 @@ public class SqlSelectTest {
         assertEquals("WITH table1 AS (SELECT 1 FROM test1 WHERE 1 = 1), table2 AS (SELECT 2 FROM test2 WHERE 2 = 2), table3 AS (SELECT 3 FROM test3 WHERE 3 = 3) SELECT * FROM toto WHERE 3 = 3", query.toString());
     }
 
+    @Test
+    public void page() {
+        Sql.Select query = Sql.select("*").from("toto").where("a = ?", 1).orderBy("b");
+        SqlTest.assertQuery(Sql.Dialect.LIMIT_OFFSET.page(query, 20, 10),
+            "SELECT * FROM toto WHERE a = ? ORDER BY b LIMIT ? OFFSET ?",
+            1, 10L, 20L);
+        SqlTest.assertQuery(Sql.Dialect.OFFSET_FETCH.page(query, 20, 10),
+            "SELECT * FROM toto WHERE a = ? ORDER BY b OFFSET ? ROWS FETCH FIRST ? ROWS ONLY",
+            1, 20L, 10L);
+        SqlTest.assertQuery(Sql.Dialect.LIMIT_OFFSET.page(Sql.union(query, query), 0, 5),
+            "(SELECT * FROM toto WHERE a = ? ORDER BY b) UNION (SELECT * FROM toto WHERE a = ? ORDER BY b) LIMIT ? OFFSET ?",
+            1, 1, 5L, 0L);
+        try {
+            Sql.Dialect.LIMIT_OFFSET.page(query.limit(3), 0, 5);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+        }
+        assertEquals(Sql.Dialect.OFFSET_FETCH, Sql.Dialect.of("Microsoft SQL Server"));
+        assertEquals(Sql.Dialect.OFFSET_FETCH, Sql.Dialect.of("Oracle"));
+        assertEquals(Sql.Dialect.LIMIT_OFFSET, Sql.Dialect.of("PostgreSQL"));
+    }
+
     @Test
     public void withUpdateQuery() {
         Sql.Select query = Sql
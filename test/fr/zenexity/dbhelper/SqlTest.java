@@ -113,6 +113,16 @@ public class SqlTest {
         assertEquals("Hello mega World giga! 1! 2! 3.", new Sql.Concat("Hello ", " World ", ".").add("mega", "giga").separator("! ").add("1","2","3").toString());
     }
 
+    @Test
+    public void concatNested() {
+        Sql.Concat inner = new Sql.Concat("(", ", ", ")").add("a", "b");
+        Sql.Concat outer = new Sql.Concat("Hello ", " World ", ".").add("mega").append(inner).append(new Sql.Concat("(", ", ", ")"));
+        assertEquals("Hello mega World (a, b) World .", outer.toString());
+        assertEquals(outer.toString().length(), outer.length());
+        assertEquals("x: Hello mega World (a, b) World .", outer.appendTo(new StringBuilder("x: ")).toString());
+        assertEquals(0, new Sql.Concat("Hello ", " World ", ".").length());
+    }
+
     @Test
     public void concatDefaultValue() {
         assertEquals("", new Sql.Concat("Hello ", " World ", ".").add("", "").toString());
@@ -241,6 +251,43 @@ public class SqlTest {
             1, 2, 3);
     }
 
+    @Test
+    public void resolveComments() {
+        assertEquals("SELECT a -- why?\nWHERE x=1 /* or ? */ AND y='--?'2",
+                Sql.resolve(new Sql.FinalQuery("SELECT a -- why?\nWHERE x=? /* or ? */ AND y='--?'?", 1, 2)));
+        assertQuery(Sql.expands(new Sql.FinalQuery("x=? -- ?", 1)), "x=? -- ?", 1);
+        assertQuery(Sql.expands(new Sql.FinalQuery("x=? /* ?", 1)), "x=? /* ?", 1);
+        assertQuery(Sql.expands(new Sql.FinalQuery("x-?/?", 1, 2)), "x-?/?", 1, 2);
+    }
+
+    @Test
+    public void resolveMany() {
+        Object[] params = new Object[5000];
+        StringBuilder query = new StringBuilder("x IN (");
+        StringBuilder resolved = new StringBuilder("x IN (");
+        for (int i = 0; i < params.length; i++) {
+            params[i] = i;
+            query.append(i == 0 ? "?" : ", ?");
+            resolved.append(i == 0 ? "" : ", ").append(i);
+        }
+        query.append(")");
+        resolved.append(")");
+        assertEquals(resolved.toString(), Sql.resolve(new Sql.FinalQuery(query.toString(), params)));
+        assertEquals(5000, Sql.placeholders(query.toString()).length);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void resolveTooManyParameters() {
+        Sql.resolve(new Sql.FinalQuery("x=? -- ?", 1, 2));
+    }
+
+    @Test
+    public void placeholders() {
+        assertArrayEquals(new int[] {2, 10}, Sql.placeholders("x=? AND y=?"));
+        assertArrayEquals(new int[] {12}, Sql.placeholders("x='?' AND y=? -- ?"));
+        assertArrayEquals(new int[0], Sql.placeholders("x=\\? /* ? */"));
+    }
+
     @Test
     public void table() {
         assertEquals("table", Sql.table("table"));
@@ -1,7 +1,9 @@
 package fr.zenexity.dbhelper;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
@@ -167,6 +169,18 @@ public class SqlWhereTest {
         assertWhere(Sql.Where.key(xyz, "x", "y", "z"), "x=? AND y=? AND z=?", 1, 2, 3);
     }
 
+    @Test
+    public void testAfter() {
+        assertWhere(Sql.Where.after(new String[] {"a"}, 1), "(a>?)", 1);
+        assertWhere(Sql.Where.after(new String[] {"a", "b DESC", "c ASC"}, 1, 2, 3),
+                "(a>?) OR (a=? AND b<?) OR (a=? AND b=? AND c>?)", 1, 1, 2, 1, 2, 3);
+        try {
+            Sql.Where.after(new String[] {"a", "b"}, 1);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
     @Test
     public void testToString() {
         assertEquals("x OR y AND z", new Sql.Where().and("x", 1).or("y", 2).and("z", 3).toString());
@@ -179,6 +193,40 @@ public class SqlWhereTest {
                 new Sql.Where().and("x", 1, 2).or("y", 3, 4).and("z", 5, 6).params());
     }
 
+    @Test
+    public void in() {
+        assertWhere(Sql.Where.in("x", 1), "x IN (?)", 1);
+        assertWhere(Sql.Where.in("x", 1, 2), "x IN (?, ?)", 1, 2);
+        assertWhere(Sql.Where.in("x", 1, 2, 3), "x IN (?, ?, ?, ?)", 1, 2, 3, 3);
+        assertWhere(Sql.Where.in("x", Arrays.asList(1, 2, 3, 4, 5)), "x IN (?, ?, ?, ?, ?, ?, ?, ?)", 1, 2, 3, 4, 5, 5, 5, 5);
+        assertWhere(Sql.Where.in("x", Arrays.asList()), "1=0");
+        assertEquals(Sql.Where.in("x", 5, 6, 7).toString(), Sql.Where.in("x", 8, 9, 10, 11).toString());
+    }
+
+    @Test
+    public void inChunks() {
+        List<Integer> values = new ArrayList<Integer>();
+        for (int i = 0; i < Sql.Where.maxInBucket + 1; i++) values.add(i);
+        Sql.Where where = Sql.Where.in("x", values);
+        String bucket = Sql.Where.in("x", values.subList(0, Sql.Where.maxInBucket)).toString();
+        assertEquals("("+ bucket +" OR x IN (?))", where.toString());
+        assertEquals(Sql.Where.maxInBucket + 1, where.paramsArray().length);
+        assertEquals(values, where.copyParams());
+
+        values.add(values.size());
+        assertEquals(Sql.Where.maxInBucket + 2, Sql.Where.in("x", values).paramsArray().length);
+    }
+
+    @Test
+    public void any() {
+        Sql.Where where = Sql.Where.any("x", "integer", 1, 2);
+        assertEquals("x = ANY(?)", where.toString());
+        Sql.ArrayParam param = (Sql.ArrayParam) where.paramsArray()[0];
+        assertEquals("integer", param.type);
+        assertArrayEquals(new Object[] {1, 2}, param.values());
+        assertArrayEquals(new Object[] {3}, ((Sql.ArrayParam) Sql.Where.any("x", "integer", Arrays.asList(3)).paramsArray()[0]).values());
+    }
+
     public static class xyz {
         public int x, y, z;
         public xyz(int x, int y, int z) {